@@ -0,0 +1,80 @@
+package ch.simlane;
+
+import ch.simlane.bench.GridMaps;
+import ch.simlane.bench.GridMaps.GridMap;
+import ch.simlane.bench.GridMaps.GridType;
+import ch.simlane.editor.Map;
+import ch.simlane.editor.scenario.Scenario;
+import ch.simlane.tme.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the steps run when the user validates a map: loading the model from the map and the scenario
+ * (see ModelLoader.createModel()) and validating the model (see Model.validate()).
+ * The work grows with the number of lanes and start and end points (the size of the grid), not with the number
+ * of cars, as the loader creates one demand per start point and car type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ModelBenchmark {
+
+    private static final int CARS_PER_START = 10;
+
+    @Param({"DENSE", "SPARSE", "CORRIDOR"})
+    public GridType gridType;
+
+    @Param({"2", "5", "10"})
+    public int size;
+
+    private Map map;
+    private Scenario scenario;
+    private Model model;
+
+    @Setup
+    public void setUp() throws ModelLoader.ModelLoaderException {
+        GridMap gridMap = GridMaps.create(gridType, size, CARS_PER_START);
+        map = gridMap.getMap();
+        scenario = gridMap.getScenario();
+        ModelLoader modelLoader = new ModelLoader(map, scenario);
+        modelLoader.createModel();
+        model = modelLoader.getModel();
+        if (!model.validate()) {
+            throw new IllegalStateException("Invalid benchmark model.");
+        }
+    }
+
+    @Benchmark
+    public Model createModel() throws ModelLoader.ModelLoaderException {
+        ModelLoader modelLoader = new ModelLoader(map, scenario);
+        modelLoader.createModel();
+        return modelLoader.getModel();
+    }
+
+    // builds the routing graph and resolves the paths of all demands
+    @Benchmark
+    public boolean validate() {
+        return model.validate();
+    }
+
+    // everything run when the user hits validate
+    @Benchmark
+    public boolean createAndValidateModel() throws ModelLoader.ModelLoaderException {
+        return createModel().validate();
+    }
+}
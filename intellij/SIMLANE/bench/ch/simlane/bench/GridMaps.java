@@ -0,0 +1,164 @@
+package ch.simlane.bench;
+
+import ch.simlane.editor.CarType;
+import ch.simlane.editor.Editor;
+import ch.simlane.editor.Map;
+import ch.simlane.editor.Tile;
+import ch.simlane.editor.scenario.EndPoint;
+import ch.simlane.editor.scenario.Scenario;
+import ch.simlane.editor.scenario.StartPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates synthetic maps and scenarios of a given size for benchmarks.
+ * DENSE: straight lanes from left to right and from top to bottom on every tile (an intersection on every tile).
+ * SPARSE: the same lanes, but only on the rows and columns which carry traffic.
+ * CORRIDOR: a single lane winding through all tiles from the top left to the bottom.
+ * In the grids, up to four rows and four columns carry traffic (one car type per row and column).
+ */
+public class GridMaps {
+
+    public static final int MIN_SIZE = 1;
+    public static final int MAX_SIZE = 10;
+
+    // the maximum number of rows (and columns) with traffic, every one needs its own car type
+    private static final int MAX_TRAFFIC_LINES = CarType.values().length / 2;
+
+    public enum GridType {
+        DENSE, SPARSE, CORRIDOR
+    }
+
+    private GridMaps() {
+    }
+
+    public static GridMap create(GridType type, int size, int carsPerStart) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalArgumentException("The size must be between " + MIN_SIZE + " and " + MAX_SIZE + ".");
+        }
+        switch (type) {
+            case DENSE:
+                return createGrid(size, carsPerStart, true);
+            case SPARSE:
+                return createGrid(size, carsPerStart, false);
+            case CORRIDOR:
+                return createCorridor(size, carsPerStart);
+            default:
+                throw new IllegalStateException("Invalid grid type value.");
+        }
+    }
+
+    private static GridMap createGrid(int size, int carsPerStart, boolean dense) {
+        Map map = new Map(size, size);
+        Scenario scenario = new Scenario("grid", size, size);
+        List<Integer> trafficLines = getTrafficLines(size);
+        CarType[] carTypes = CarType.values();
+        int numCars = 0;
+        for (int i = 0; i < size; i++) {
+            int line = trafficLines.indexOf(i);
+            if (!dense && line == -1) {
+                continue;
+            }
+            for (int j = 0; j < size; j++) {
+                map.getTile(i, j).setLaneState(Editor.SIDE_LEFT, Editor.SIDE_RIGHT, Tile.LANE_STATE_SELECTED);
+                map.getTile(j, i).setLaneState(Editor.SIDE_TOP, Editor.SIDE_BOTTOM, Tile.LANE_STATE_SELECTED);
+            }
+            // rows and columns without traffic still need scenario points at their ends
+            CarType rowType = line == -1 ? null : carTypes[line];
+            CarType colType = line == -1 ? null : carTypes[MAX_TRAFFIC_LINES + line];
+            int cars = line == -1 ? 0 : carsPerStart;
+            addScenarioPoints(scenario, Editor.SIDE_LEFT, i, Editor.SIDE_RIGHT, i, rowType, cars);
+            addScenarioPoints(scenario, Editor.SIDE_TOP, i, Editor.SIDE_BOTTOM, i, colType, cars);
+            numCars += 2 * cars;
+        }
+        return new GridMap(map, scenario, numCars);
+    }
+
+    // the rows (and columns) with traffic, spread evenly over the grid
+    private static List<Integer> getTrafficLines(int size) {
+        int numLines = Math.min(size, MAX_TRAFFIC_LINES);
+        List<Integer> lines = new ArrayList<>();
+        for (int i = 0; i < numLines; i++) {
+            lines.add(numLines == 1 ? 0 : (int) Math.round(i * (size - 1) / (double) (numLines - 1)));
+        }
+        return lines;
+    }
+
+    private static GridMap createCorridor(int size, int carsPerStart) {
+        Map map = new Map(size, size);
+        Scenario scenario = new Scenario("corridor", size, size);
+        // even rows are traversed from left to right, odd rows from right to left
+        int entrySide = Editor.SIDE_LEFT;
+        for (int row = 0; row < size; row++) {
+            boolean eastbound = row % 2 == 0;
+            for (int i = 0; i < size; i++) {
+                int col = eastbound ? i : size - 1 - i;
+                boolean lastInRow = i == size - 1;
+                int exitSide;
+                if (!lastInRow || row == size - 1) {
+                    exitSide = eastbound ? Editor.SIDE_RIGHT : Editor.SIDE_LEFT;
+                } else {
+                    exitSide = Editor.SIDE_BOTTOM;
+                }
+                map.getTile(row, col).setLaneState(entrySide, exitSide, Tile.LANE_STATE_SELECTED);
+                entrySide = getOppositeSide(exitSide);
+            }
+        }
+        int exitSide = (size - 1) % 2 == 0 ? Editor.SIDE_RIGHT : Editor.SIDE_LEFT;
+        addScenarioPoints(scenario, Editor.SIDE_LEFT, 0, exitSide, size - 1, CarType.values()[0], carsPerStart);
+        return new GridMap(map, scenario, carsPerStart);
+    }
+
+    private static int getOppositeSide(int side) {
+        switch (side) {
+            case Editor.SIDE_TOP:
+                return Editor.SIDE_BOTTOM;
+            case Editor.SIDE_LEFT:
+                return Editor.SIDE_RIGHT;
+            case Editor.SIDE_RIGHT:
+                return Editor.SIDE_LEFT;
+            case Editor.SIDE_BOTTOM:
+                return Editor.SIDE_TOP;
+            default:
+                throw new IllegalArgumentException(side + " is not a valid side.");
+        }
+    }
+
+    private static void addScenarioPoints(Scenario scenario, int startSide, int startPos, int endSide, int endPos,
+                                          CarType carType, int cars) {
+        StartPoint startPoint = new StartPoint(startSide, startPos);
+        if (cars > 0) {
+            startPoint.addInboundTraffic(carType, cars);
+        }
+        scenario.addScenarioPoint(startPoint);
+        EndPoint endPoint = new EndPoint(endSide, endPos);
+        endPoint.setCarType(carType);
+        scenario.addScenarioPoint(endPoint);
+    }
+
+    public static class GridMap {
+
+        private Map map;
+        private Scenario scenario;
+        private int numCars;
+
+        private GridMap(Map map, Scenario scenario, int numCars) {
+            this.map = map;
+            this.scenario = scenario;
+            this.numCars = numCars;
+        }
+
+        public Map getMap() {
+            return map;
+        }
+
+        public Scenario getScenario() {
+            return scenario;
+        }
+
+        public int getNumCars() {
+            return numCars;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package ch.simlane.bench;
+
+import ch.simlane.ModelLoader;
+import ch.simlane.bench.GridMaps.GridMap;
+import ch.simlane.bench.GridMaps.GridType;
+import ch.simlane.tme.HeadlessRunner;
+import ch.simlane.tme.Model;
+import ch.simlane.tme.Simulation;
+import ch.simlane.tme.SimulationException;
+import ch.simlane.tme.metrics.SimulationMetrics;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures the throughput of headless simulations on generated grids of increasing size and car count.
+ * Prints one CSV row per configuration, which shows at which size the engine stops being real time
+ * (a real time factor below 1) and allows comparing versions.
+ * <p>
+ * Arguments (all optional): types=DENSE,SPARSE,CORRIDOR sizes=2,4,6,8,10 cars=10,50,100
+ * timeLimit=3600 (simulated seconds) seed=1 validation=FULL|SAMPLED|OFF out=results.csv
+ */
+public class ScalabilityBenchmark {
+
+    private static final String CSV_HEADER = "type,size,carsPerStart,cars,lanes,intersections,outcome,steps," +
+            "simulatedTime_s,wallTime_ms,stepsPerSecond,realTimeFactor,meanStep_us,p99Step_us,maxActiveCars," +
+            "peakHeap_MB";
+
+    private static final int HEAP_SAMPLING_INTERVAL = 100; // steps
+
+    private List<GridType> types;
+    private List<Integer> sizes;
+    private List<Integer> carsPerStart;
+    private long timeLimit; // milliseconds
+    private long seed;
+    private int validationMode;
+    private PrintStream out;
+
+    private MemoryMXBean memory;
+    private long peakHeap; // bytes
+
+    public static void main(String[] args) throws FileNotFoundException {
+        ScalabilityBenchmark benchmark = new ScalabilityBenchmark();
+        benchmark.parseArguments(args);
+        benchmark.run();
+    }
+
+    private ScalabilityBenchmark() {
+        types = List.of(GridType.values());
+        sizes = List.of(2, 4, 6, 8, 10);
+        carsPerStart = List.of(10, 50, 100);
+        timeLimit = 60 * 60 * 1000;
+        seed = 1;
+        validationMode = Simulation.VALIDATION_MODE_FULL;
+        out = System.out;
+        memory = ManagementFactory.getMemoryMXBean();
+    }
+
+    private void parseArguments(String[] args) throws FileNotFoundException {
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator == -1) {
+                throw new IllegalArgumentException("Invalid argument " + arg + " (expected key=value).");
+            }
+            String key = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            switch (key) {
+                case "types":
+                    types = new ArrayList<>();
+                    for (String type : value.split(",")) {
+                        types.add(GridType.valueOf(type.trim().toUpperCase(Locale.ROOT)));
+                    }
+                    break;
+                case "sizes":
+                    sizes = parseIntegers(value);
+                    break;
+                case "cars":
+                    carsPerStart = parseIntegers(value);
+                    break;
+                case "timeLimit":
+                    timeLimit = Long.parseLong(value) * 1000;
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "validation":
+                    validationMode = parseValidationMode(value);
+                    break;
+                case "out":
+                    out = new PrintStream(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + key + ".");
+            }
+        }
+    }
+
+    private static int parseValidationMode(String value) {
+        switch (value.toUpperCase(Locale.ROOT)) {
+            case "FULL":
+                return Simulation.VALIDATION_MODE_FULL;
+            case "SAMPLED":
+                return Simulation.VALIDATION_MODE_SAMPLED;
+            case "OFF":
+                return Simulation.VALIDATION_MODE_OFF;
+            default:
+                throw new IllegalArgumentException("Unknown validation mode " + value + ".");
+        }
+    }
+
+    private static List<Integer> parseIntegers(String value) {
+        List<Integer> integers = new ArrayList<>();
+        for (String integer : value.split(",")) {
+            integers.add(Integer.parseInt(integer.trim()));
+        }
+        return integers;
+    }
+
+    private void run() {
+        // warm up the jit with a small configuration
+        measure(GridType.DENSE, 2, 10);
+        out.println(CSV_HEADER);
+        for (GridType type : types) {
+            for (int size : sizes) {
+                for (int cars : carsPerStart) {
+                    out.println(measure(type, size, cars));
+                    out.flush();
+                }
+            }
+        }
+        if (out != System.out) {
+            out.close();
+        }
+    }
+
+    private String measure(GridType type, int size, int cars) {
+        GridMap gridMap = GridMaps.create(type, size, cars);
+        String configuration = String.format(Locale.ROOT, "%s,%d,%d,%d", type, size, cars, gridMap.getNumCars());
+        ModelLoader modelLoader = new ModelLoader(gridMap.getMap(), gridMap.getScenario());
+        try {
+            modelLoader.createModel();
+        } catch (ModelLoader.ModelLoaderException e) {
+            return configuration + ",,,invalid";
+        }
+        Model model = modelLoader.getModel();
+        configuration += "," + model.getLanes().size() + "," + model.getIntersections().size();
+        if (!model.validate()) {
+            return configuration + ",invalid";
+        }
+        model.setSeed(seed);
+        Simulation simulation = new Simulation(model);
+        SimulationMetrics metrics = new SimulationMetrics();
+        simulation.setMetrics(metrics);
+        simulation.setValidationMode(validationMode);
+        HeadlessRunner runner = new HeadlessRunner(simulation);
+        runner.setTimeLimit(timeLimit);
+        runner.setSampler(HEAP_SAMPLING_INTERVAL, state -> sampleHeap());
+        System.gc();
+        long baseHeap = memory.getHeapMemoryUsage().getUsed();
+        peakHeap = baseHeap;
+        String outcome;
+        long start = System.nanoTime();
+        try {
+            outcome = runner.run() ? "finished" : "timedOut";
+        } catch (SimulationException e) {
+            outcome = "failed";
+            System.err.println(configuration + ": " + e.getMessage());
+        }
+        double wallTime = (System.nanoTime() - start) / 1e6; // milliseconds
+        sampleHeap();
+        return configuration + String.format(Locale.ROOT, ",%s,%d,%.1f,%.1f,%.1f,%.2f,%.1f,%.1f,%d,%.1f",
+                outcome, runner.getSteps(), simulation.getTime() / 1000.0, wallTime,
+                runner.getSteps() / (wallTime / 1000), simulation.getTime() / wallTime,
+                metrics.getStep().getMean(), metrics.getStep().getP99(), metrics.getMaxActiveCars(),
+                (peakHeap - baseHeap) / (1024.0 * 1024.0));
+    }
+
+    private void sampleHeap() {
+        peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+    }
+}
@@ -0,0 +1,109 @@
+package ch.simlane.tme.algorithms;
+
+import ch.simlane.ModelLoader;
+import ch.simlane.bench.GridMaps;
+import ch.simlane.bench.GridMaps.GridMap;
+import ch.simlane.bench.GridMaps.GridType;
+import ch.simlane.tme.Model;
+import ch.simlane.tme.components.Connector;
+import ch.simlane.tme.components.Demand;
+import ch.simlane.tme.components.Lane;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the construction of routing graphs and shortest path queries on synthetic grids (see GridMaps).
+ * The routes of a routing graph are cached, so the benchmarks which query routes build a new graph every time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RoutingBenchmark {
+
+    private static final int CARS_PER_START = 1;
+
+    @Param({"DENSE", "SPARSE", "CORRIDOR"})
+    public GridType gridType;
+
+    @Param({"2", "5", "10"})
+    public int size;
+
+    private List<Lane> lanes;
+
+    // the distinct pairs of start and end connectors of the demands
+    private Connector[] starts;
+    private Connector[] ends;
+
+    // the pair with the longest route
+    private Connector longestStart;
+    private Connector longestEnd;
+
+    @Setup
+    public void setUp() throws ModelLoader.ModelLoaderException {
+        GridMap gridMap = GridMaps.create(gridType, size, CARS_PER_START);
+        ModelLoader modelLoader = new ModelLoader(gridMap.getMap(), gridMap.getScenario());
+        modelLoader.createModel();
+        Model model = modelLoader.getModel();
+        lanes = model.getLanes();
+        LinkedHashSet<List<Connector>> pairs = new LinkedHashSet<>();
+        for (Demand demand : model.getDemands()) {
+            pairs.add(List.of(demand.getStartConnector(), demand.getEndConnector()));
+        }
+        starts = new Connector[pairs.size()];
+        ends = new Connector[pairs.size()];
+        RoutingGraph routingGraph = new RoutingGraph(lanes);
+        int longest = -1;
+        int i = 0;
+        for (List<Connector> pair : pairs) {
+            starts[i] = pair.get(0);
+            ends[i] = pair.get(1);
+            List<Connector> route = routingGraph.shortestPath(starts[i], ends[i]);
+            if (route == null) {
+                throw new IllegalStateException("Invalid benchmark model.");
+            }
+            if (route.size() > longest) {
+                longest = route.size();
+                longestStart = starts[i];
+                longestEnd = ends[i];
+            }
+            i++;
+        }
+    }
+
+    @Benchmark
+    public RoutingGraph buildGraph() {
+        return new RoutingGraph(lanes);
+    }
+
+    // the longest route of the model computed on the graph reachable from its start (see ShortestPath)
+    @Benchmark
+    public List<Connector> shortestPath() {
+        return ShortestPath.shortestPath(longestStart, longestEnd);
+    }
+
+    // the routes of all demands on a new graph of the model (as computed by Model.validate())
+    @Benchmark
+    public void allRoutes(Blackhole blackhole) {
+        RoutingGraph routingGraph = new RoutingGraph(lanes);
+        for (int i = 0; i < starts.length; i++) {
+            blackhole.consume(routingGraph.shortestPath(starts[i], ends[i]));
+        }
+    }
+}
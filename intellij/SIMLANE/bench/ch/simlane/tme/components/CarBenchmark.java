@@ -0,0 +1,175 @@
+package ch.simlane.tme.components;
+
+import ch.simlane.tme.Model;
+import ch.simlane.tme.Simulation;
+import ch.simlane.tme.SimulationException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the car following kernel (look ahead, acceleration and move) on a synthetic chain of lanes.
+ * A queue of cars is formed at a traffic light and then the light is set according to the obstacle mix.
+ * Every invocation restores the state of the queue (without allocating) and then runs STEPS steps, so every
+ * invocation runs the same steps. The random streams of the cars are not restored, they only vary the thresholds
+ * of the car following model.
+ * Run with "-prof gc" to report the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CarBenchmark {
+
+    private static final long DT = 50; // milliseconds
+    private static final long SEED = 1;
+    private static final int MAX_QUEUE_STEPS = 100000;
+    // the steps per invocation, over which restoring the queue is amortized (no car leaves its lane)
+    private static final int STEPS = 10;
+
+    // the space per car in the queue in m
+    private static final double CAR_SPACING = 10;
+    private static final double CROSSING_LENGTH = 20; // m
+    private static final double EXIT_LENGTH = 100; // m
+
+    /*
+     * The obstacle seen by the first car of the queue (all other cars see the car ahead).
+     * CAR_AHEAD: the light is green, the first car sees no obstacle within the look ahead cutoff.
+     * RED_LIGHT: the light stays red.
+     * ORANGE_LIGHT: the light is orange, the stopped cars interpret it as red.
+     */
+    public enum ObstacleMix {
+        CAR_AHEAD, RED_LIGHT, ORANGE_LIGHT
+    }
+
+    @Param({"1", "16", "128"})
+    public int queueLength;
+
+    @Param({"CAR_AHEAD", "RED_LIGHT", "ORANGE_LIGHT"})
+    public ObstacleMix obstacleMix;
+
+    private Car[] cars;
+    private CarStore store;
+
+    // copies of the cars of the queue (not on any lane), from which the cars are restored
+    private Car[] snapshot;
+
+    @Setup
+    public void setUp() throws SimulationException {
+        Model model = new Model();
+        model.setSeed(SEED);
+        Connector start = new Connector("start", 0, Connector.CONNECTOR_TYPE_START);
+        Connector stopLine = new Connector(0, 1);
+        Connector exit = new Connector(1, 2);
+        Connector end = new Connector(2, "end", Connector.CONNECTOR_TYPE_END);
+        LaneGroup signal = new LaneGroup(stopLine);
+        model.addLane(new Lane(queueLength * CAR_SPACING + CAR_SPACING, new LaneGroup(start), stopLine));
+        model.addLane(new Lane(CROSSING_LENGTH, signal, exit));
+        model.addLane(new Lane(EXIT_LENGTH, new LaneGroup(exit), end));
+        for (int i = 0; i < queueLength; i++) {
+            Car car = new Car(i);
+            car.setStartConnector(start);
+            car.setEndConnector(end);
+            model.addCar(car);
+        }
+        if (!model.validate()) {
+            throw new IllegalStateException("Invalid benchmark model.");
+        }
+        signal.setState(TrafficLight.RED);
+        Simulation simulation = new Simulation(model);
+        simulation.setParallel(false);
+        store = model.getCarStore();
+        cars = new Car[queueLength];
+        for (int id = 0; id < queueLength; id++) {
+            cars[id] = store.getCar(id);
+        }
+        // let the cars queue up at the red light
+        for (int i = 0; i < MAX_QUEUE_STEPS && !isQueued(); i++) {
+            simulation.nextStep(DT);
+        }
+        if (!isQueued()) {
+            throw new IllegalStateException("The cars did not queue up.");
+        }
+        switch (obstacleMix) {
+            case CAR_AHEAD:
+                signal.setState(TrafficLight.GREEN);
+                break;
+            case RED_LIGHT:
+                break;
+            case ORANGE_LIGHT:
+                signal.setState(TrafficLight.ORANGE);
+                break;
+            default:
+                throw new IllegalStateException("Invalid obstacle mix value.");
+        }
+        snapshot = new Car[queueLength];
+        Lane[] lanes = new Lane[queueLength];
+        for (int id = 0; id < queueLength; id++) {
+            snapshot[id] = new Car(cars[id].getRef());
+            snapshot[id].copyState(cars[id]);
+            lanes[id] = cars[id].getLane();
+        }
+        // the lanes are not restored, so no car may leave its lane within the steps of an invocation
+        update();
+        for (int id = 0; id < queueLength; id++) {
+            if (cars[id].getLane() != lanes[id]) {
+                throw new IllegalStateException("A car left its lane within the steps of an invocation.");
+            }
+        }
+    }
+
+    // restores the state of the queue after the setup from the copies of the cars
+    private void restore() {
+        for (int id = 0; id < queueLength; id++) {
+            cars[id].copyState(snapshot[id]);
+        }
+    }
+
+    private boolean isQueued() {
+        for (Car car : cars) {
+            if (car.getState() != Car.CAR_STATE_ACTIVE || car.getV() > 0.1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // look ahead and acceleration of all cars (does not move the cars)
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public double[] prepare() {
+        restore();
+        for (int i = 0; i < STEPS; i++) {
+            for (Car car : cars) {
+                car.prepare(DT);
+            }
+        }
+        return store.aNext;
+    }
+
+    // complete updates of all cars
+    @Benchmark
+    @OperationsPerInvocation(STEPS)
+    public double[] update() throws SimulationException {
+        restore();
+        for (int i = 0; i < STEPS; i++) {
+            for (Car car : cars) {
+                car.update(DT);
+            }
+        }
+        return store.pos;
+    }
+}
@@ -0,0 +1,213 @@
+package ch.simlane;
+
+import ch.simlane.editor.Map;
+import ch.simlane.editor.scenario.Scenario;
+import ch.simlane.tme.HeadlessRunner;
+import ch.simlane.tme.Model;
+import ch.simlane.tme.Simulation;
+import ch.simlane.tme.SimulationException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs independent replications of the same map and scenario concurrently.
+ * As the car following model is stochastic, a single run says little about the quality of a map.
+ * Every replication loads its own model and uses its own seed, which makes the whole batch reproducible.
+ * The map and the scenario must not be modified while a batch is running.
+ */
+public class BatchRunner {
+
+    private static final long DEFAULT_TIME_LIMIT = 60 * 60 * 1000; // milliseconds
+
+    private Map map;
+    private Scenario scenario;
+
+    private long seed;
+    private long timeLimit;
+    private int parallelism;
+    private int validationMode;
+
+    public BatchRunner(Map map, Scenario scenario) {
+        this.map = map;
+        this.scenario = scenario;
+        timeLimit = DEFAULT_TIME_LIMIT;
+        parallelism = Runtime.getRuntime().availableProcessors();
+        validationMode = Simulation.VALIDATION_MODE_FULL;
+    }
+
+    // replication i is run with the seed (seed + i)
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    // replications reaching the simulation time limit are counted as timed out
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("The parallelism must be positive.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    // replications failing a validation are counted as failed (see Simulation.setValidationMode())
+    public void setValidationMode(int validationMode) {
+        if (validationMode != Simulation.VALIDATION_MODE_FULL && validationMode != Simulation.VALIDATION_MODE_SAMPLED &&
+                validationMode != Simulation.VALIDATION_MODE_OFF) {
+            throw new IllegalArgumentException("Invalid validation mode value.");
+        }
+        this.validationMode = validationMode;
+    }
+
+    public BatchResult run(int replications) throws InterruptedException {
+        List<Callable<Replication>> tasks = new ArrayList<>(replications);
+        for (int i = 0; i < replications; i++) {
+            long replicationSeed = seed + i;
+            tasks.add(() -> runReplication(replicationSeed));
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            BatchResult result = new BatchResult();
+            for (Future<Replication> future : pool.invokeAll(tasks)) {
+                result.add(future.get());
+            }
+            return result;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replication failed unexpectedly.", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Replication runReplication(long seed) {
+        ModelLoader modelLoader = new ModelLoader(map, scenario);
+        try {
+            modelLoader.createModel();
+        } catch (ModelLoader.ModelLoaderException e) {
+            return new Replication(Replication.OUTCOME_INVALID, 0);
+        }
+        Model model = modelLoader.getModel();
+        if (!model.validate()) {
+            return new Replication(Replication.OUTCOME_INVALID, 0);
+        }
+        model.setSeed(seed);
+        Simulation simulation = new Simulation(model);
+        simulation.setValidationMode(validationMode);
+        // the replications already keep the pool busy, parallel steps would exceed the parallelism
+        simulation.setParallel(false);
+        HeadlessRunner runner = new HeadlessRunner(simulation);
+        runner.setTimeLimit(timeLimit);
+        try {
+            if (!runner.run()) {
+                return new Replication(Replication.OUTCOME_TIMED_OUT, runner.getSimulation().getTime());
+            }
+        } catch (SimulationException e) {
+            if (Simlane.DEBUG) {
+                e.printStackTrace();
+            }
+            return new Replication(Replication.OUTCOME_FAILED, runner.getSimulation().getTime());
+        }
+        return new Replication(Replication.OUTCOME_FINISHED, runner.getSimulation().getTime());
+    }
+
+    private static class Replication {
+
+        static final int OUTCOME_FINISHED = 14000;
+        static final int OUTCOME_FAILED = 14001;
+        static final int OUTCOME_TIMED_OUT = 14002;
+        static final int OUTCOME_INVALID = 14003;
+
+        private int outcome;
+        private long t; // milliseconds
+
+        Replication(int outcome, long t) {
+            this.outcome = outcome;
+            this.t = t;
+        }
+    }
+
+    public static class BatchResult {
+
+        // the simulation times of the finished replications in milliseconds
+        private List<Long> finishTimes;
+        private int failed;
+        private int timedOut;
+        private int invalid;
+
+        private BatchResult() {
+            finishTimes = new ArrayList<>();
+        }
+
+        private void add(Replication replication) {
+            switch (replication.outcome) {
+                case Replication.OUTCOME_FINISHED:
+                    finishTimes.add(replication.t);
+                    break;
+                case Replication.OUTCOME_FAILED:
+                    failed++;
+                    break;
+                case Replication.OUTCOME_TIMED_OUT:
+                    timedOut++;
+                    break;
+                case Replication.OUTCOME_INVALID:
+                    invalid++;
+                    break;
+                default:
+                    throw new IllegalStateException("Invalid replication outcome value.");
+            }
+        }
+
+        public List<Long> getFinishTimes() {
+            return Collections.unmodifiableList(finishTimes);
+        }
+
+        public int getFinished() {
+            return finishTimes.size();
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public int getTimedOut() {
+            return timedOut;
+        }
+
+        public int getInvalid() {
+            return invalid;
+        }
+
+        public double getMeanFinishTime() {
+            if (finishTimes.isEmpty()) {
+                return Double.NaN;
+            }
+            double sum = 0;
+            for (long t : finishTimes) {
+                sum += t;
+            }
+            return sum / finishTimes.size();
+        }
+
+        public long getMinFinishTime() {
+            return finishTimes.isEmpty() ? -1 : Collections.min(finishTimes);
+        }
+
+        public long getMaxFinishTime() {
+            return finishTimes.isEmpty() ? -1 : Collections.max(finishTimes);
+        }
+
+        @Override
+        public String toString() {
+            return "BatchResult[finished:" + getFinished() + ", failed:" + failed + ", timedOut:" + timedOut +
+                    ", invalid:" + invalid + ", meanFinishTime:" + getMeanFinishTime() + "]";
+        }
+    }
+}
@@ -31,6 +31,11 @@ public class ModelLoader implements Runnable {
     private HashMap<ConnectorLocation, Connector> unconnected;
     private HashMap<ScenarioPoint, Connector> scenarioPointConnectors;
 
+    // creates a model loader which only creates models (see createModel() and getModel())
+    public ModelLoader(Map map, Scenario scenario) {
+        this(map, scenario, null);
+    }
+
     public ModelLoader(Map map, Scenario scenario, Engine tme) {
         this.map = map;
         this.scenario = scenario;
@@ -50,6 +55,10 @@ public class ModelLoader implements Runnable {
         tme.loadModel(model);
     }
 
+    public Model getModel() {
+        return model;
+    }
+
     public void createModel() throws ModelLoaderException {
         model = new Model();
         createScenarioPointConnectors();
@@ -200,17 +209,15 @@ public class ModelLoader implements Runnable {
         for (StartPoint startPoint : scenario.getStartPoints()) {
             for (CarType carType : startPoint.getInboundTraffic().keySet()) {
                 int count = startPoint.getInboundTraffic().get(carType);
-                for (int i = 0; i < count; i++) {
-                    Car car = new Car(carType);
-                    car.setStartConnector(scenarioPointConnectors.get(startPoint));
-                    car.setEndConnector(scenarioPointConnectors.get(scenario.getEndPoint(carType)));
-                    model.addCar(car);
-                }
+                Connector start = scenarioPointConnectors.get(startPoint);
+                Connector end = scenarioPointConnectors.get(scenario.getEndPoint(carType));
+                // the cars are created during the simulation when they are about to enter
+                model.addDemand(new Demand(carType, start, end, count));
             }
         }
     }
 
-    private static class ModelLoaderException extends Exception {
+    public static class ModelLoaderException extends Exception {
 
         ModelLoaderException(String message) {
             super(message);
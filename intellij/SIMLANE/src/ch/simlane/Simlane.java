@@ -2,6 +2,7 @@ package ch.simlane;
 
 import ch.simlane.editor.Editor;
 import ch.simlane.tme.Engine;
+import ch.simlane.tme.Simulation;
 import ch.simlane.ui.SimlaneUI;
 import ch.simlane.utils.SimlaneTMEListener;
 import ch.simlane.utils.SimlaneUIListener;
@@ -27,6 +28,8 @@ public class Simlane {
         editor = new Editor();
         ui = new SimlaneUI(editor);
         tme = new Engine();
+        // the state parser applies the changes of every state
+        tme.setSnapshotMode(Simulation.SNAPSHOT_MODE_DELTA);
         ui.addSimlaneUIListener(new SimlaneUIListener(this));
         tme.addTMEListener(new SimlaneTMEListener(this));
         editor.getTools().getSystemOutput().log(SYSTEM_STARTUP_MESSAGE, MESSAGE_TYPE_INFO);
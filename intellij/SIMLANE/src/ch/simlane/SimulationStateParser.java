@@ -12,9 +12,12 @@ import ch.simlane.ui.SimlaneUI;
 
 import java.awt.geom.Point2D;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
 
 import static ch.simlane.editor.Tile.TileLocation;
 import static ch.simlane.tme.components.Connector.ConnectorLocation;
@@ -29,30 +32,50 @@ public class SimulationStateParser {
 
     private Editor editor;
 
+    // the sequence number of the last parsed state
+    private long sequence;
+    // the traffic lights of each tile and the cars by id as of the last parsed state
+    private HashMap<Tile, TrafficLight[][]> trafficLights;
+    private TreeMap<Integer, CarIndicator> traffic;
+
     public SimulationStateParser(Editor editor) {
         this.editor = editor;
+        sequence = -1;
+        trafficLights = new HashMap<>();
+        traffic = new TreeMap<>();
     }
 
     public void parse(SimulationState simulationState) {
+        if (simulationState.isKeyframe()) {
+            trafficLights.clear();
+            traffic.clear();
+        } else if (simulationState.getBaseSequence() != sequence) {
+            // a state has been missed, wait for the next keyframe
+            return;
+        }
+        sequence = simulationState.getSequence();
         parseLaneState(simulationState.getLanes());
-        parseCarState(simulationState.getCars());
+        parseCarState(simulationState);
         parseMetaData(simulationState);
     }
 
     private void parseLaneState(List<LaneState> lanes) {
-        HashMap<Tile, List<LaneState>> tileLanes = new HashMap<>();
+        Set<Tile> changedTiles = new HashSet<>();
         for (LaneState lane : lanes) {
             Tile tile = getTile(lane);
-            tileLanes.computeIfAbsent(tile, k -> new LinkedList<>()).add(lane);
+            TrafficLight[][] tileTrafficLights = trafficLights.computeIfAbsent(tile, k -> new TrafficLight[4][4]);
+            int sideFromIndex = Editor.getArrayIndexFromSide(getSide(lane, LANE_SIDE_FROM));
+            int sideToIndex = Editor.getArrayIndexFromSide(getSide(lane, LANE_SIDE_TO));
+            tileTrafficLights[sideFromIndex][sideToIndex] = lane.getState();
+            changedTiles.add(tile);
         }
-        for (Tile tile : tileLanes.keySet()) {
-            TrafficLight[][] trafficLights = new TrafficLight[4][4];
-            for (LaneState lane : tileLanes.get(tile)) {
-                int sideFromIndex = Editor.getArrayIndexFromSide(getSide(lane, LANE_SIDE_FROM));
-                int sideToIndex = Editor.getArrayIndexFromSide(getSide(lane, LANE_SIDE_TO));
-                trafficLights[sideFromIndex][sideToIndex] = lane.getState();
+        for (Tile tile : changedTiles) {
+            // the tile keeps the array, so it gets a copy
+            TrafficLight[][] tileTrafficLights = new TrafficLight[4][];
+            for (int i = 0; i < tileTrafficLights.length; i++) {
+                tileTrafficLights[i] = trafficLights.get(tile)[i].clone();
             }
-            tile.setTrafficLights(trafficLights);
+            tile.setTrafficLights(tileTrafficLights);
         }
     }
 
@@ -103,12 +126,17 @@ public class SimulationStateParser {
         return tileLocation.getSideOf(adjacentTileLocation);
     }
 
-    private void parseCarState(List<CarState> cars) {
-        List<CarIndicator> traffic = new LinkedList<>();
-        for (CarState car : cars) {
-            traffic.add(getCarIndicator(car));
+    private void parseCarState(SimulationState simulationState) {
+        for (int id : simulationState.getArrivedCars()) {
+            traffic.remove(id);
+        }
+        for (CarState car : simulationState.getCars()) {
+            traffic.put(car.getId(), getCarIndicator(car));
+        }
+        if (simulationState.isKeyframe() || !simulationState.getCars().isEmpty() ||
+                !simulationState.getArrivedCars().isEmpty()) {
+            editor.getTraffic().setTraffic(new ArrayList<>(traffic.values()));
         }
-        editor.getTraffic().setTraffic(traffic);
     }
 
     private CarIndicator getCarIndicator(CarState car) {
@@ -7,11 +7,16 @@ import java.util.concurrent.Executors;
 
 public class ObservableStateObject {
 
-    private ExecutorService executor;
+    // all observable objects share a single dispatch thread, which keeps the events of each object in order
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "simlane-state-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private List<StateChangeListener> stateChangeListeners;
 
     public ObservableStateObject() {
-        executor = Executors.newSingleThreadExecutor();
         stateChangeListeners = new LinkedList<>();
     }
 
@@ -23,7 +28,7 @@ public class ObservableStateObject {
 
     public void fireStateChange(StateChangeEvent event) {
         for (StateChangeListener listener : stateChangeListeners) {
-            executor.execute(() -> listener.stateChange(event));
+            EXECUTOR.execute(() -> listener.stateChange(event));
         }
     }
 }
@@ -1,13 +1,20 @@
 package ch.simlane.tme;
 
+import ch.simlane.tme.metrics.SimulationMetrics;
 import ch.simlane.tme.state.SimulationState;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Responsible for handling the simulation of traffic.
@@ -32,23 +39,154 @@ public class Engine {
     public static final int SIMULATION_FAILED_EVENT = 12006;
     public static final int SIMULATION_STATE_CHANGED_EVENT = 12007;
 
-    private static final int SIMULATION_RESOLUTION = 20; // updates / second
-    private static final int SIMULATION_PERIOD = 1000 / SIMULATION_RESOLUTION; // milliseconds / update
+    static final int SIMULATION_RESOLUTION = 20; // updates / second
+    static final int SIMULATION_PERIOD = 1000 / SIMULATION_RESOLUTION; // milliseconds / update
+
+    public static final double MIN_TIME_SCALE = 0.25;
+    public static final double MAX_TIME_SCALE = 50;
+    public static final long MIN_TIME_STEP = 1; // milliseconds
+    public static final long MAX_TIME_STEP = 500; // milliseconds
+
+    // late updates are skipped, each update simulates one period
+    public static final int CATCH_UP_POLICY_SKIP = 16000;
+    // each update simulates the elapsed real time, but at most MAX_CATCH_UP_PERIODS periods
+    public static final int CATCH_UP_POLICY_BOUNDED = 16001;
+    // late updates start immediately, each update simulates one period (the simulation slows down)
+    public static final int CATCH_UP_POLICY_SLOW_DOWN = 16002;
+
+    private static final int MAX_CATCH_UP_PERIODS = 4;
+    private static final long SIMULATION_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(SIMULATION_PERIOD);
+    // the weight of the latest update in the real time factor
+    private static final double REAL_TIME_FACTOR_SMOOTHING = 0.1;
+
+    private static final String METRICS_OBJECT_NAME = "ch.simlane.tme:type=SimulationMetrics";
+    private static final AtomicInteger numEngines = new AtomicInteger();
 
     private Model model;
     private Simulation simulation;
+    private int snapshotMode;
+    // the simulated time per step and the simulated time per real time
+    private volatile long timeStep; // milliseconds
+    private volatile double timeScale;
+    private volatile int catchUpPolicy;
+
+    // the number of updates which did not finish before the next update was due
+    private volatile long overruns;
+    // the simulated time per real time (smoothed over the recent updates)
+    private volatile double realTimeFactor;
+    private SimulationMetrics metrics;
+    private ObjectName metricsName;
+    // the state of the last completed step, published without locking (see getSimulationState())
+    private volatile SimulationState simulationState;
 
     private ScheduledExecutorService scheduler;
+    private HeadlessRunner headlessRunner;
     private boolean running;
     private boolean finished;
     private boolean failed;
 
     private ExecutorService eventExecutor;
-    private List<TMEListener> tmeListeners;
+    private List<ListenerQueue> tmeListeners;
+    // the number of states which have been merged into a later state instead of being delivered
+    private AtomicLong droppedStates;
 
     public Engine() {
         eventExecutor = Executors.newSingleThreadExecutor();
         tmeListeners = new LinkedList<>();
+        droppedStates = new AtomicLong();
+        snapshotMode = Simulation.SNAPSHOT_MODE_FULL;
+        timeStep = SIMULATION_PERIOD;
+        timeScale = 1;
+        catchUpPolicy = CATCH_UP_POLICY_BOUNDED;
+        metrics = new SimulationMetrics();
+        registerMetrics();
+    }
+
+    // makes the metrics available through jmx until shutdown() (every engine gets its own object name)
+    private void registerMetrics() {
+        int engine = numEngines.incrementAndGet();
+        try {
+            metricsName = new ObjectName(METRICS_OBJECT_NAME + (engine == 1 ? "" : ",engine=" + engine));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metricsName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Registering the simulation metrics failed.", e);
+        }
+    }
+
+    private void unregisterMetrics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Unregistering the simulation metrics failed.", e);
+        }
+    }
+
+    // the metrics of the steps since the last model was loaded or reset
+    public SimulationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the simulated time per simulation step. Smaller steps are more accurate, larger steps are faster.
+     * Can be changed while the simulation is running.
+     */
+    public void setTimeStep(long timeStep) {
+        if (timeStep < MIN_TIME_STEP || timeStep > MAX_TIME_STEP) {
+            throw new IllegalArgumentException("The time step must be between " + MIN_TIME_STEP + " and " +
+                    MAX_TIME_STEP + " ms.");
+        }
+        this.timeStep = timeStep;
+    }
+
+    public long getTimeStep() {
+        return timeStep;
+    }
+
+    /**
+     * Sets the simulated time per real time (1 is real time).
+     * The engine still updates at SIMULATION_RESOLUTION, each update runs as many steps as are due.
+     * Can be changed while the simulation is running.
+     */
+    public void setTimeScale(double timeScale) {
+        if (!(timeScale >= MIN_TIME_SCALE && timeScale <= MAX_TIME_SCALE)) {
+            throw new IllegalArgumentException("The time scale must be between " + MIN_TIME_SCALE + " and " +
+                    MAX_TIME_SCALE + ".");
+        }
+        this.timeScale = timeScale;
+    }
+
+    public double getTimeScale() {
+        return timeScale;
+    }
+
+    // decides what happens if the updates can not keep up with real time (CATCH_UP_POLICY_BOUNDED by default)
+    public void setCatchUpPolicy(int catchUpPolicy) {
+        if (catchUpPolicy != CATCH_UP_POLICY_SKIP && catchUpPolicy != CATCH_UP_POLICY_BOUNDED &&
+                catchUpPolicy != CATCH_UP_POLICY_SLOW_DOWN) {
+            throw new IllegalArgumentException("Invalid catch up policy value.");
+        }
+        this.catchUpPolicy = catchUpPolicy;
+    }
+
+    // the number of overrun updates since the simulation was loaded or reset
+    public long getOverruns() {
+        return overruns;
+    }
+
+    // the ratio of simulated time to real time of the recent updates (0 if the simulation is not running)
+    public double getRealTimeFactor() {
+        return realTimeFactor;
+    }
+
+    /**
+     * Sets the snapshot mode of the simulations (see Simulation.SNAPSHOT_MODE_FULL and SNAPSHOT_MODE_DELTA).
+     * In delta mode, listeners must apply the states of all state changed events in order.
+     */
+    public synchronized void setSnapshotMode(int snapshotMode) {
+        this.snapshotMode = snapshotMode;
+        if (simulation != null) {
+            simulation.setSnapshotMode(snapshotMode);
+        }
     }
 
     public synchronized void loadModel(Model model) {
@@ -66,19 +204,49 @@ public class Engine {
             return;
         }
         simulation = new Simulation(model);
-        emitEvent(new TMEEvent(SIMULATION_STATE_CHANGED_EVENT));
+        simulation.setSnapshotMode(snapshotMode);
+        simulation.setMetrics(metrics);
+        metrics.reset();
+        overruns = 0;
+        emitStateChangedEvent();
         emitEvent(new TMEEvent(SIMULATION_READY_EVENT));
     }
 
     public synchronized void startSimulation() {
+        if (!prepareStart()) {
+            return;
+        }
+        // a paused headless run only published sampled states, so the listener may lack the base of a delta
+        simulation.requestKeyframe();
+        scheduler.execute(new SimulationUpdate(scheduler));
+    }
+
+    /**
+     * Runs the simulation as fast as possible instead of in real time.
+     * A state changed event is emitted every samplingInterval steps (0 disables sampling).
+     * The simulation can be paused and resumed like a real time simulation.
+     */
+    public synchronized void startHeadlessSimulation(int samplingInterval) {
+        if (!prepareStart()) {
+            return;
+        }
+        headlessRunner = new HeadlessRunner(simulation, timeStep);
+        if (samplingInterval > 0) {
+            headlessRunner.setSampler(samplingInterval,
+                    this::publishState);
+        }
+        scheduler.execute(new HeadlessUpdate(headlessRunner));
+    }
+
+    private boolean prepareStart() {
         if (model == null) {
             throw new IllegalStateException("Model is null.");
         }
         if (running) {
-            return;
+            return false;
         }
         if (finished || failed) {
-            return;
+            return false;
         }
         if (scheduler != null) {
             awaitTermination();
@@ -86,7 +254,7 @@ public class Engine {
         running = true;
         emitEvent(new TMEEvent(SIMULATION_STARTED_EVENT));
         scheduler = Executors.newSingleThreadScheduledExecutor();
-        scheduler.scheduleAtFixedRate(new SimulationUpdate(), 0, SIMULATION_PERIOD, TimeUnit.MILLISECONDS);
+        return true;
     }
 
     public void pauseSimulation() {
@@ -109,6 +277,11 @@ public class Engine {
             return false;
         }
         scheduler.shutdown();
+        realTimeFactor = 0;
+        if (headlessRunner != null) {
+            headlessRunner.stop();
+            headlessRunner = null;
+        }
         running = false;
         return true;
     }
@@ -127,15 +300,25 @@ public class Engine {
         failed = false;
         model.reset();
         simulation = new Simulation(model);
-        emitEvent(new TMEEvent(SIMULATION_STATE_CHANGED_EVENT));
+        simulation.setSnapshotMode(snapshotMode);
+        simulation.setMetrics(metrics);
+        metrics.reset();
+        overruns = 0;
+        emitStateChangedEvent();
         emitEvent(new TMEEvent(SIMULATION_READY_EVENT));
     }
 
-    public synchronized SimulationState getSimulationState() {
-        if (model == null) {
+    /**
+     * Returns the state of the last completed step. Does not lock the engine, so readers never wait for
+     * the simulation thread or for loading and resetting the model.
+     * In delta mode, the returned state only contains the changes since the previous state.
+     */
+    public SimulationState getSimulationState() {
+        SimulationState state = simulationState;
+        if (state == null) {
             throw new IllegalStateException("Model is null.");
         }
-        return simulation.getState();
+        return state;
     }
 
     public synchronized void reset() {
@@ -147,21 +330,54 @@ public class Engine {
         }
         model = null;
         simulation = null;
+        simulationState = null;
         scheduler = null;
         running = false;
         finished = false;
         failed = false;
     }
 
+    /**
+     * Stops the simulation and releases the event thread and the jmx registration of the metrics.
+     * The engine can not be used afterwards.
+     */
+    public void shutdown() {
+        if (eventExecutor.isShutdown()) {
+            return;
+        }
+        stopSimulation();
+        if (scheduler != null) {
+            awaitTermination();
+        }
+        eventExecutor.shutdown();
+        unregisterMetrics();
+    }
+
     public void addTMEListener(TMEListener listener) {
-        if (!tmeListeners.contains(listener)) {
-            tmeListeners.add(listener);
+        for (ListenerQueue queue : tmeListeners) {
+            if (queue.listener == listener) {
+                return;
+            }
         }
+        tmeListeners.add(new ListenerQueue(listener));
+    }
+
+    public long getDroppedStates() {
+        return droppedStates.get();
+    }
+
+    private void emitStateChangedEvent() {
+        publishState(simulation.getState());
+    }
+
+    private void publishState(SimulationState state) {
+        simulationState = state;
+        emitEvent(new TMEEvent(SIMULATION_STATE_CHANGED_EVENT, state));
     }
 
     private void emitEvent(TMEEvent event) {
-        for (TMEListener listener : tmeListeners) {
-            eventExecutor.execute(() -> listener.tmeEvent(event));
+        for (ListenerQueue queue : tmeListeners) {
+            queue.add(event);
         }
     }
 
@@ -173,28 +389,185 @@ public class Engine {
         }
     }
 
+    /*
+     * Delivers the events to a listener in order, except that a state changed event which has not been
+     * delivered yet absorbs the following state changed events (the latest state wins). As the states may be
+     * deltas, they are merged instead of replaced. A state is never merged across another event.
+     */
+    private class ListenerQueue {
+
+        private TMEListener listener;
+        // the slot of the enqueued state changed event which has not been delivered yet (or null)
+        private StateSlot pendingState;
+
+        private ListenerQueue(TMEListener listener) {
+            this.listener = listener;
+        }
+
+        private synchronized void add(TMEEvent event) {
+            if (event.getType() != SIMULATION_STATE_CHANGED_EVENT) {
+                pendingState = null;
+                eventExecutor.execute(() -> listener.tmeEvent(event));
+                return;
+            }
+            if (pendingState != null) {
+                pendingState.event = merge(pendingState.event, event);
+                droppedStates.incrementAndGet();
+                return;
+            }
+            StateSlot slot = new StateSlot(event);
+            pendingState = slot;
+            eventExecutor.execute(() -> listener.tmeEvent(take(slot)));
+        }
+
+        private synchronized TMEEvent take(StateSlot slot) {
+            if (pendingState == slot) {
+                pendingState = null;
+            }
+            return slot.event;
+        }
+
+        private TMEEvent merge(TMEEvent previous, TMEEvent next) {
+            if (previous.getState() == null || next.getState() == null ||
+                    next.getState().getBaseSequence() != previous.getState().getSequence()) {
+                // the listener waits for the next keyframe
+                return next;
+            }
+            SimulationState state = SimulationState.merge(previous.getState(), next.getState());
+            return new TMEEvent(SIMULATION_STATE_CHANGED_EVENT, state);
+        }
+    }
+
+    private static class StateSlot {
+
+        private TMEEvent event;
+
+        private StateSlot(TMEEvent event) {
+            this.event = event;
+        }
+    }
+
+    /*
+     * Runs the simulation in real time. Each update adds the scaled real time to an accumulator and runs as
+     * many steps as are due. Then it schedules itself for the next period (see setCatchUpPolicy()).
+     */
     private class SimulationUpdate implements Runnable {
 
+        private ScheduledExecutorService executor;
+
+        // the simulated time which is due but has not been simulated yet
+        private double accumulator; // milliseconds
+        // the start of the previous update and the time at which the next update is due
+        private long lastStart; // nanoseconds
+        private long deadline; // nanoseconds
+
+        private SimulationUpdate(ScheduledExecutorService executor) {
+            this.executor = executor;
+        }
+
         @Override
         public void run() {
+            if (executor.isShutdown()) {
+                return;
+            }
+            long start = System.nanoTime();
+            if (lastStart == 0) {
+                lastStart = start - SIMULATION_PERIOD_NANOS;
+                deadline = start;
+            }
+            double elapsed = (start - lastStart) / 1e6; // milliseconds
+            lastStart = start;
             if (simulation.hasNextStep()) {
-                try {
-                    simulation.nextStep(SIMULATION_PERIOD);
-                } catch (SimulationException e) {
-                    if (Engine.DEBUG) {
-                        e.printStackTrace();
+                double scale = timeScale;
+                if (catchUpPolicy == CATCH_UP_POLICY_BOUNDED) {
+                    double maxAccumulator = MAX_CATCH_UP_PERIODS * SIMULATION_PERIOD * scale;
+                    accumulator = Math.min(accumulator + elapsed * scale, maxAccumulator);
+                } else {
+                    accumulator += SIMULATION_PERIOD * scale;
+                }
+                long t = simulation.getTime();
+                long dt = timeStep;
+                long steps = (long) (accumulator / dt);
+                accumulator -= steps * dt;
+                // only one state is published per update, so the states of the steps are merged
+                SimulationState state = null;
+                for (long i = 0; i < steps && simulation.hasNextStep(); i++) {
+                    try {
+                        simulation.nextStep(dt);
+                        state = state == null ? simulation.getState() :
+                                SimulationState.merge(state, simulation.getState());
+                    } catch (SimulationException e) {
+                        if (Engine.DEBUG) {
+                            e.printStackTrace();
+                        }
+                        failed = true;
+                        stopSimulation();
+                        emitEvent(new TMEEvent(SIMULATION_FAILED_EVENT));
+                        return;
                     }
-                    failed = true;
-                    stopSimulation();
-                    emitEvent(new TMEEvent(SIMULATION_FAILED_EVENT));
-                    return;
                 }
-                emitEvent(new TMEEvent(SIMULATION_STATE_CHANGED_EVENT));
+                if (state != null) {
+                    publishState(state);
+                }
+                double factor = (simulation.getTime() - t) / elapsed;
+                realTimeFactor += REAL_TIME_FACTOR_SMOOTHING * (factor - realTimeFactor);
+                scheduleNext();
             } else {
                 finished = true;
                 stopSimulation();
                 emitEvent(new TMEEvent(SIMULATION_FINISHED_EVENT));
             }
         }
+
+        private void scheduleNext() {
+            long now = System.nanoTime();
+            deadline += SIMULATION_PERIOD_NANOS;
+            if (now > deadline) {
+                overruns++;
+                if (catchUpPolicy == CATCH_UP_POLICY_SKIP) {
+                    // continue with the next period which has not started yet
+                    deadline += ((now - deadline) / SIMULATION_PERIOD_NANOS + 1) * SIMULATION_PERIOD_NANOS;
+                } else {
+                    deadline = now;
+                }
+            }
+            try {
+                executor.schedule(this, deadline - now, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // the simulation has been stopped
+            }
+        }
+    }
+
+    private class HeadlessUpdate implements Runnable {
+
+        private HeadlessRunner runner;
+
+        private HeadlessUpdate(HeadlessRunner runner) {
+            this.runner = runner;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!runner.run()) {
+                    // stopped by pausing the simulation
+                    return;
+                }
+            } catch (SimulationException e) {
+                if (Engine.DEBUG) {
+                    e.printStackTrace();
+                }
+                failed = true;
+                stopSimulation();
+                emitStateChangedEvent();
+                emitEvent(new TMEEvent(SIMULATION_FAILED_EVENT));
+                return;
+            }
+            finished = true;
+            stopSimulation();
+            emitStateChangedEvent();
+            emitEvent(new TMEEvent(SIMULATION_FINISHED_EVENT));
+        }
     }
 }
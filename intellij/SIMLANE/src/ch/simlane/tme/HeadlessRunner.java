@@ -0,0 +1,88 @@
+package ch.simlane.tme;
+
+import ch.simlane.tme.state.SimulationState;
+
+/**
+ * Drives a simulation in a tight loop without any real time scheduling.
+ * Used to evaluate maps as fast as the cpu allows when nobody is watching the simulation.
+ */
+public class HeadlessRunner {
+
+    private Simulation simulation;
+    private long dt; // milliseconds
+
+    private int samplingInterval; // steps
+    private StateSampler sampler;
+    private long timeLimit; // milliseconds
+
+    private volatile boolean stopped;
+    private long steps;
+
+    public HeadlessRunner(Simulation simulation) {
+        this(simulation, Engine.SIMULATION_PERIOD);
+    }
+
+    public HeadlessRunner(Simulation simulation, long dt) {
+        if (dt <= 0) {
+            throw new IllegalArgumentException("The step size must be positive.");
+        }
+        this.simulation = simulation;
+        this.dt = dt;
+    }
+
+    // the sampler receives the simulation state after every samplingInterval steps
+    public void setSampler(int samplingInterval, StateSampler sampler) {
+        if (samplingInterval <= 0) {
+            throw new IllegalArgumentException("The sampling interval must be positive.");
+        }
+        this.samplingInterval = samplingInterval;
+        this.sampler = sampler;
+    }
+
+    // the run is aborted once the simulation time reaches the limit (0 means no limit)
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Runs the simulation until it is finished, the time limit is reached or the runner is stopped.
+     * Returns true if the simulation finished.
+     */
+    public boolean run() throws SimulationException {
+        while (simulation.hasNextStep()) {
+            if (stopped) {
+                return false;
+            }
+            if (timeLimit > 0 && simulation.getTime() >= timeLimit) {
+                return false;
+            }
+            if (sampler != null && (steps + 1) % samplingInterval == 0) {
+                // the sampler does not receive the states in between
+                simulation.requestKeyframe();
+            }
+            simulation.nextStep(dt);
+            steps++;
+            if (sampler != null && steps % samplingInterval == 0) {
+                sampler.sample(simulation.getState());
+            }
+        }
+        return true;
+    }
+
+    public interface StateSampler {
+
+        void sample(SimulationState state);
+    }
+}
@@ -1,24 +1,48 @@
 package ch.simlane.tme;
 
-import ch.simlane.tme.algorithms.ShortestPath;
+import ch.simlane.tme.algorithms.RoutingGraph;
 import ch.simlane.tme.components.Car;
+import ch.simlane.tme.components.CarStore;
 import ch.simlane.tme.components.Connector;
+import ch.simlane.tme.components.Demand;
 import ch.simlane.tme.components.Intersection;
 import ch.simlane.tme.components.Lane;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
 
 public class Model {
 
     private List<Car> cars;
+    // the trips whose cars are only created during the simulation (see Simulation)
+    private List<Demand> demands;
+    // the kinematic state of all cars (see CarStore)
+    private CarStore carStore;
     private List<Lane> lanes;
     private List<Intersection> intersections;
+    // the graph used to find the paths of the cars (built by validate())
+    private RoutingGraph routingGraph;
+
+    // the seed from which the random streams of all cars are derived
+    private long seed;
 
     public Model() {
         cars = new LinkedList<>();
+        demands = new LinkedList<>();
+        carStore = new CarStore();
         lanes = new LinkedList<>();
         intersections = new LinkedList<>();
+        seed = new Random().nextLong();
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
     }
 
     public List<Car> getCars() {
@@ -26,14 +50,37 @@ public class Model {
     }
 
     public void addCar(Car car) {
+        carStore.attach(car);
         cars.add(car);
     }
 
+    public List<Demand> getDemands() {
+        return demands;
+    }
+
+    public void addDemand(Demand demand) {
+        demands.add(demand);
+    }
+
+    // the number of cars of all simulated trips (the cars of the model and the cars of the demands)
+    public int getNumTrips() {
+        int numTrips = cars.size();
+        for (Demand demand : demands) {
+            numTrips += demand.getCount();
+        }
+        return numTrips;
+    }
+
+    public CarStore getCarStore() {
+        return carStore;
+    }
+
     public List<Lane> getLanes() {
         return lanes;
     }
 
     public void addLane(Lane lane) {
+        lane.setIndex(lanes.size());
         lanes.add(lane);
     }
 
@@ -42,23 +89,56 @@ public class Model {
     }
 
     public void addIntersection(Intersection intersection) {
+        intersection.setIndex(intersections.size());
         intersections.add(intersection);
     }
 
+    public RoutingGraph getRoutingGraph() {
+        return routingGraph;
+    }
+
     public boolean validate() {
+        routingGraph = new RoutingGraph(lanes);
         for (Car car : cars) {
             Connector start = car.getStartConnector();
             Connector end = car.getEndConnector();
-            List<Connector> path = ShortestPath.shortestPath(start, end);
+            List<Connector> path = routingGraph.shortestPath(start, end);
             if (path == null) {
                 return false;
             }
             car.setPath(path);
         }
+        for (Demand demand : demands) {
+            // like a model without cars, a demand without trips needs no route
+            if (demand.getCount() == 0) {
+                continue;
+            }
+            List<Connector> path = routingGraph.shortestPath(demand.getStartConnector(), demand.getEndConnector());
+            if (path == null) {
+                return false;
+            }
+            demand.setPath(path);
+        }
         return true;
     }
 
+    /*
+     * Gives every car its own random stream split off the seed of the model.
+     * This makes simulations reproducible and keeps the random streams confined
+     * to the thread running the simulation. The returned stream is used to split
+     * the streams of the cars generated during the simulation.
+     */
+    SplittableRandom initializeRandom() {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (Car car : cars) {
+            car.setRandom(random.split());
+        }
+        return random;
+    }
+
     public void reset() {
+        // drop the cars generated by the previous simulation
+        carStore.truncate(cars.size());
         cars.forEach(Car::reset);
         lanes.forEach(Lane::reset);
         intersections.forEach(Intersection::reset);
@@ -1,25 +1,107 @@
 package ch.simlane.tme;
 
 import ch.simlane.tme.components.Car;
+import ch.simlane.tme.components.CarStore;
+import ch.simlane.tme.components.Demand;
 import ch.simlane.tme.components.Intersection;
 import ch.simlane.tme.components.Lane;
+import ch.simlane.tme.jfr.SimulationStepEvent;
+import ch.simlane.tme.metrics.SimulationMetrics;
 import ch.simlane.tme.state.SimulationState;
+import ch.simlane.tme.state.StateTracker;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
 public class Simulation {
 
+    // the minimum number of cars for which the accelerations are calculated in parallel
+    private static final int PARALLEL_THRESHOLD = 512;
+
+    // every state is a keyframe containing all active cars and all lanes
+    public static final int SNAPSHOT_MODE_FULL = 15000;
+    // only every keyframeInterval-th state is a keyframe, the others only contain the changes
+    public static final int SNAPSHOT_MODE_DELTA = 15001;
+
+    private static final int DEFAULT_KEYFRAME_INTERVAL = 100; // steps
+
+    // all cars and lanes are validated after every step
+    public static final int VALIDATION_MODE_FULL = 17000;
+    // all cars and lanes are validated after every validationInterval-th step, crashes of cars on the same lane
+    // are detected while moving the cars in all other steps
+    public static final int VALIDATION_MODE_SAMPLED = 17001;
+    // only crashes of cars on the same lane are detected while moving the cars (see Car.move())
+    public static final int VALIDATION_MODE_OFF = 17002;
+
+    private static final int DEFAULT_VALIDATION_INTERVAL = 10; // steps
+
     private Model model;
 
+    private boolean parallel;
+    private SimulationMetrics metrics;
+
+    private int snapshotMode;
+    private int keyframeInterval;
+    private boolean keyframeRequested;
+    private StateTracker stateTracker;
     private SimulationState state;
 
+    private int validationMode;
+    private int validationInterval;
+    // the number of steps since the simulation was created, counted in nextStep()
+    private long steps;
+
+    /*
+     * The waiting cars and demands in one spawn queue per entry lane. Only the first car of each queue
+     * tries to enter, so waiting cars cost nothing until they can actually enter.
+     */
+    private List<SpawnQueue> spawnQueues;
+    // the arrived cars generated for demands, which are reused for the next generated cars
+    private ArrayDeque<Car> carPool;
+    // the cars with an id below this number are the cars of the model, all others are generated
+    private int numModelCars;
+    // the number of cars of all trips (see Model.getNumTrips())
+    private int numCars;
+    // the stream from which the random streams of the generated cars are split (see Model.initializeRandom())
+    private SplittableRandom random;
+    // the ids of the cars which entered in the current step in ascending order
+    private int[] enteredCars;
+    private int numEnteredCars;
+    /*
+     * The ids of the active cars in ascending order. Only the active cars are moved, which keeps the cost
+     * of a step proportional to the number of cars on the road.
+     */
+    private int[] activeCars;
+    private int numActiveCars;
+    private int numArrivedCars;
+    // the ids of the cars which are active or arrived in the last step in ascending order (see updateState())
+    private int[] updatedCars;
+    private int numUpdatedCars;
+    // the active cars of the next step (swapped with activeCars after every update)
+    private int[] nextActiveCars;
+
     private boolean finished;
     private long t; // milliseconds
 
     public Simulation(Model model) {
         this.model = model;
+        parallel = true;
+        snapshotMode = SNAPSHOT_MODE_FULL;
+        keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+        stateTracker = new StateTracker();
+        setValidationMode(VALIDATION_MODE_FULL);
+        validationInterval = DEFAULT_VALIDATION_INTERVAL;
         initialize();
     }
 
     private void initialize() {
+        random = model.initializeRandom();
+        initializeCars();
         model.getIntersections().forEach(Intersection::initialize);
         try {
             nextStep(0);
@@ -28,37 +110,227 @@ public class Simulation {
         }
     }
 
+    private void initializeCars() {
+        CarStore carStore = model.getCarStore();
+        numModelCars = carStore.size();
+        numCars = model.getNumTrips();
+        activeCars = new int[numModelCars];
+        nextActiveCars = new int[numModelCars];
+        updatedCars = new int[numModelCars];
+        carPool = new ArrayDeque<>();
+        // the cars of the model enter before the cars of the demands of the same entry lane
+        LinkedHashMap<Lane, SpawnQueue> queues = new LinkedHashMap<>();
+        for (int id = 0; id < numModelCars; id++) {
+            Car car = carStore.getCar(id);
+            int state = car.getState();
+            if (state == Car.CAR_STATE_NEW) {
+                queues.computeIfAbsent(car.getEntryLane(), lane -> new SpawnQueue()).cars.add(car);
+            } else if (state == Car.CAR_STATE_ACTIVE) {
+                activeCars[numActiveCars++] = id;
+            } else {
+                numArrivedCars++;
+            }
+        }
+        for (Demand demand : model.getDemands()) {
+            if (demand.getCount() > 0) {
+                queues.computeIfAbsent(demand.getEntryLane(), lane -> new SpawnQueue()).demands.add(demand);
+            }
+        }
+        spawnQueues = new ArrayList<>(queues.values());
+        enteredCars = new int[spawnQueues.size()];
+    }
+
     public long getTime() {
         return t;
     }
 
+    // enables calculating the accelerations of the cars on several cores (enabled by default)
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    // records the durations of the phases of every step (null disables recording)
+    public void setMetrics(SimulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setSnapshotMode(int snapshotMode) {
+        if (snapshotMode != SNAPSHOT_MODE_FULL && snapshotMode != SNAPSHOT_MODE_DELTA) {
+            throw new IllegalArgumentException("Invalid snapshot mode value.");
+        }
+        this.snapshotMode = snapshotMode;
+    }
+
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval <= 0) {
+            throw new IllegalArgumentException("The keyframe interval must be positive.");
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Sets how thoroughly the state of the cars and lanes is checked after each step (see VALIDATION_MODE_FULL,
+     * VALIDATION_MODE_SAMPLED and VALIDATION_MODE_OFF). The full validation is meant for development,
+     * the other modes for long runs which can not afford it.
+     */
+    public void setValidationMode(int validationMode) {
+        if (validationMode != VALIDATION_MODE_FULL && validationMode != VALIDATION_MODE_SAMPLED &&
+                validationMode != VALIDATION_MODE_OFF) {
+            throw new IllegalArgumentException("Invalid validation mode value.");
+        }
+        this.validationMode = validationMode;
+        model.getCarStore().setCrashDetection(validationMode != VALIDATION_MODE_FULL);
+    }
+
+    // the number of steps between two full validations in sampled mode
+    public void setValidationInterval(int validationInterval) {
+        if (validationInterval <= 0) {
+            throw new IllegalArgumentException("The validation interval must be positive.");
+        }
+        this.validationInterval = validationInterval;
+    }
+
+    // the state of the next step will be a keyframe (for consumers which do not receive every state)
+    public void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
     public void nextStep(long dt) throws SimulationException {
         t += dt;
+        steps++;
+        SimulationStepEvent event = new SimulationStepEvent();
+        event.begin();
+        long start = System.nanoTime();
         updateIntersections(dt);
+        long carsStart = System.nanoTime();
         updateCars(dt);
+        long validateStart = System.nanoTime();
         validate();
+        finished = numArrivedCars == numCars;
+        long stateStart = System.nanoTime();
         updateState();
-        for (Car car : model.getCars()) {
-            if (car.getState() != Car.CAR_STATE_ARRIVED) {
-                return;
-            }
+        long end = System.nanoTime();
+        if (metrics != null) {
+            metrics.recordStep(start, carsStart, validateStart, stateStart, end, numActiveCars);
+        }
+        if (event.shouldCommit()) {
+            event.simulationTime = t;
+            event.timeStep = dt;
+            event.cars = numCars;
+            event.activeCars = numActiveCars;
+            event.updateIntersections = carsStart - start;
+            event.updateCars = validateStart - carsStart;
+            event.validate = stateStart - validateStart;
+            event.updateState = end - stateStart;
+            event.commit();
         }
-        finished = true;
     }
 
     private void updateIntersections(long dt) {
         model.getIntersections().forEach(intersection -> intersection.update(dt));
     }
 
+    /*
+     * Updates the cars in two phases. Before the first phase the first cars of the spawn queues enter, so that
+     * the active cars see them as obstacles. The first phase calculates the accelerations of the active cars from
+     * the state of the previous step, which makes the result independent of the order of the cars and allows the
+     * calculation to run in parallel. The second phase moves the active cars in the order of their ids (the
+     * entered cars move from the next step on).
+     */
     private void updateCars(long dt) throws SimulationException {
-        for (Car car : model.getCars()) {
-            car.update(dt);
+        CarStore carStore = model.getCarStore();
+        carStore.nextTick();
+        spawnCars(dt);
+        if (parallel && numActiveCars >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, numActiveCars).parallel().forEach(i -> carStore.getCar(activeCars[i]).prepare(dt));
+        } else {
+            for (int i = 0; i < numActiveCars; i++) {
+                carStore.getCar(activeCars[i]).prepare(dt);
+            }
         }
+        // move the active cars and merge the entered cars into the active cars of the next step by id
+        int entered = 0;
+        int numActive = 0;
+        numUpdatedCars = 0;
+        for (int i = 0; i < numActiveCars; i++) {
+            int id = activeCars[i];
+            while (entered < numEnteredCars && enteredCars[entered] < id) {
+                nextActiveCars[numActive++] = enteredCars[entered];
+                updatedCars[numUpdatedCars++] = enteredCars[entered++];
+            }
+            Car car = carStore.getCar(id);
+            car.commit(dt);
+            if (car.getState() == Car.CAR_STATE_ACTIVE) {
+                nextActiveCars[numActive++] = id;
+            } else {
+                numArrivedCars++;
+                if (id >= numModelCars) {
+                    carPool.add(car);
+                }
+            }
+            updatedCars[numUpdatedCars++] = id;
+        }
+        while (entered < numEnteredCars) {
+            nextActiveCars[numActive++] = enteredCars[entered];
+            updatedCars[numUpdatedCars++] = enteredCars[entered++];
+        }
+        int[] previousActiveCars = activeCars;
+        activeCars = nextActiveCars;
+        nextActiveCars = previousActiveCars;
+        numActiveCars = numActive;
+    }
+
+    /*
+     * Lets the first car of every spawn queue try to enter its lane. At most one car enters a lane per step,
+     * as a car which has just entered occupies the start of the lane.
+     */
+    private void spawnCars(long dt) throws SimulationException {
+        numEnteredCars = 0;
+        for (SpawnQueue spawnQueue : spawnQueues) {
+            Car car = spawnQueue.cars.peek();
+            if (car == null) {
+                if (spawnQueue.demands.isEmpty()) {
+                    continue;
+                }
+                car = spawnQueue.generateCar();
+            }
+            car.commit(dt);
+            if (car.getState() == Car.CAR_STATE_ACTIVE) {
+                spawnQueue.cars.poll();
+                enteredCars[numEnteredCars++] = car.getId();
+            }
+        }
+        Arrays.sort(enteredCars, 0, numEnteredCars);
+    }
+
+    // creates a car for a trip of the specified demand or reuses an arrived car
+    private Car createCar(Demand demand) {
+        Car car = carPool.poll();
+        if (car == null) {
+            car = new Car(demand);
+            CarStore carStore = model.getCarStore();
+            carStore.attach(car);
+            if (carStore.size() > activeCars.length) {
+                int capacity = Math.max(activeCars.length * 2, carStore.size());
+                activeCars = Arrays.copyOf(activeCars, capacity);
+                nextActiveCars = Arrays.copyOf(nextActiveCars, capacity);
+                updatedCars = Arrays.copyOf(updatedCars, capacity);
+            }
+        } else {
+            car.reuse(demand);
+        }
+        car.setRandom(random.split());
+        return car;
     }
 
     private void validate() throws SimulationException {
-        for (Car car : model.getCars()) {
-            car.validate();
+        if (validationMode == VALIDATION_MODE_OFF ||
+                (validationMode == VALIDATION_MODE_SAMPLED && steps % validationInterval != 0)) {
+            return;
+        }
+        CarStore carStore = model.getCarStore();
+        for (int i = 0; i < numActiveCars; i++) {
+            carStore.getCar(activeCars[i]).validate();
         }
         for (Lane lane : model.getLanes()) {
             lane.validate();
@@ -66,7 +338,12 @@ public class Simulation {
     }
 
     private void updateState() {
-        state = new SimulationState(this, model.getCars(), model.getLanes());
+        // the final state is a keyframe, as it may be the only state a consumer receives after skipping states
+        boolean keyframe = snapshotMode == SNAPSHOT_MODE_FULL || keyframeRequested || finished ||
+                (state != null && (state.getSequence() + 1) % keyframeInterval == 0);
+        keyframeRequested = false;
+        state = stateTracker.createState(t, keyframe, model.getCarStore(), updatedCars, numUpdatedCars,
+                model.getLanes());
     }
 
     public boolean hasNextStep() {
@@ -76,4 +353,32 @@ public class Simulation {
     public SimulationState getState() {
         return state;
     }
+
+    /*
+     * The cars waiting to enter a lane. The cars of the demands are generated one at a time,
+     * when the previous car has entered.
+     */
+    private class SpawnQueue {
+
+        private ArrayDeque<Car> cars;
+        private ArrayDeque<Demand> demands;
+        // the number of cars generated for the first demand
+        private int generated;
+
+        SpawnQueue() {
+            cars = new ArrayDeque<>();
+            demands = new ArrayDeque<>();
+        }
+
+        Car generateCar() {
+            Demand demand = demands.peek();
+            Car car = createCar(demand);
+            cars.add(car);
+            if (++generated == demand.getCount()) {
+                demands.poll();
+                generated = 0;
+            }
+            return car;
+        }
+    }
 }
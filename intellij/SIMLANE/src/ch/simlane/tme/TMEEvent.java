@@ -1,14 +1,27 @@
 package ch.simlane.tme;
 
+import ch.simlane.tme.state.SimulationState;
+
 public class TMEEvent {
 
     private int type;
+    private SimulationState state;
 
     public TMEEvent(int type) {
+        this(type, null);
+    }
+
+    public TMEEvent(int type, SimulationState state) {
         this.type = type;
+        this.state = state;
     }
 
     public int getType() {
         return type;
     }
+
+    // the simulation state of a state changed event (null for all other events)
+    public SimulationState getState() {
+        return state;
+    }
 }
@@ -0,0 +1,237 @@
+package ch.simlane.tme.algorithms;
+
+import ch.simlane.tme.components.Connector;
+import ch.simlane.tme.components.Lane;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A compact graph with the connectors as nodes and the lanes as weighted edges.
+ * The graph is built once for a set of lanes and answers shortest path queries using Dijkstra's
+ * algorithm with a binary heap. The routes are cached per pair of start and end connector.
+ */
+public class RoutingGraph {
+
+    private HashMap<Connector, Integer> nodeIds;
+    private Connector[] nodes;
+
+    // the edges of node i are stored at the indices from edgeStart[i] to edgeStart[i + 1] (exclusive)
+    private int[] edgeStart;
+    private int[] edgeEnd;
+    private double[] edgeWeight;
+
+    // the cached routes (or null if no route exists) by (start * number of nodes + end)
+    private HashMap<Long, List<Connector>> routes;
+
+    public RoutingGraph(Collection<Lane> lanes) {
+        nodeIds = new HashMap<>();
+        List<Connector> connectors = new LinkedList<>();
+        for (Lane lane : lanes) {
+            addNode(lane.getStart(), connectors);
+            addNode(lane.getEnd(), connectors);
+        }
+        nodes = connectors.toArray(new Connector[0]);
+        // count the outgoing edges of every node
+        edgeStart = new int[nodes.length + 1];
+        for (Lane lane : lanes) {
+            edgeStart[nodeIds.get(lane.getStart()) + 1]++;
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            edgeStart[i + 1] += edgeStart[i];
+        }
+        // fill in the edges
+        edgeEnd = new int[lanes.size()];
+        edgeWeight = new double[lanes.size()];
+        int[] next = Arrays.copyOf(edgeStart, nodes.length);
+        for (Lane lane : lanes) {
+            int edge = next[nodeIds.get(lane.getStart())]++;
+            edgeEnd[edge] = nodeIds.get(lane.getEnd());
+            edgeWeight[edge] = lane.getLength();
+        }
+        routes = new HashMap<>();
+    }
+
+    // creates the graph of all lanes reachable from the specified connector
+    public static RoutingGraph reachableFrom(Connector start) {
+        List<Lane> lanes = new LinkedList<>();
+        HashSet<Connector> visited = new HashSet<>();
+        LinkedList<Connector> unprocessed = new LinkedList<>();
+        unprocessed.add(start);
+        visited.add(start);
+        while (!unprocessed.isEmpty()) {
+            Connector connector = unprocessed.pop();
+            if (connector.getOut() == null) {
+                continue;
+            }
+            for (Lane lane : connector.getOut().getLanes()) {
+                lanes.add(lane);
+                if (visited.add(lane.getEnd())) {
+                    unprocessed.add(lane.getEnd());
+                }
+            }
+        }
+        return new RoutingGraph(lanes);
+    }
+
+    private void addNode(Connector connector, List<Connector> connectors) {
+        if (!nodeIds.containsKey(connector)) {
+            nodeIds.put(connector, connectors.size());
+            connectors.add(connector);
+        }
+    }
+
+    public int getNumNodes() {
+        return nodes.length;
+    }
+
+    public int getNumEdges() {
+        return edgeEnd.length;
+    }
+
+    /**
+     * Returns the connectors along the shortest path from start to end (both included)
+     * or null if the end can not be reached. The returned list must not be modified.
+     */
+    public synchronized List<Connector> shortestPath(Connector startConnector, Connector endConnector) {
+        Integer start = nodeIds.get(startConnector);
+        Integer end = nodeIds.get(endConnector);
+        if (start == null || end == null) {
+            return null;
+        }
+        long key = (long) start * nodes.length + end;
+        if (routes.containsKey(key)) {
+            return routes.get(key);
+        }
+        List<Connector> route = dijkstra(start, end);
+        routes.put(key, route);
+        return route;
+    }
+
+    private List<Connector> dijkstra(int start, int end) {
+        double[] distance = new double[nodes.length];
+        int[] parent = new int[nodes.length];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        Arrays.fill(parent, -1);
+        distance[start] = 0;
+        Heap heap = new Heap(distance);
+        heap.update(start);
+        while (!heap.isEmpty()) {
+            int current = heap.poll();
+            if (current == end) {
+                LinkedList<Connector> path = new LinkedList<>();
+                for (int node = end; node != -1; node = parent[node]) {
+                    path.push(nodes[node]);
+                }
+                return Collections.unmodifiableList(path);
+            }
+            for (int edge = edgeStart[current]; edge < edgeStart[current + 1]; edge++) {
+                int next = edgeEnd[edge];
+                double weight = distance[current] + edgeWeight[edge];
+                if (weight < distance[next]) {
+                    distance[next] = weight;
+                    parent[next] = current;
+                    heap.update(next);
+                }
+            }
+        }
+        return null;
+    }
+
+    /*
+     * A binary min heap of node ids ordered by their distance (ties are broken by the node id).
+     * Supports decreasing the distance of a node which is already in the heap.
+     */
+    private static class Heap {
+
+        private double[] distance;
+        private int[] heap;
+        // the index of each node in the heap or -1
+        private int[] index;
+        private int size;
+
+        Heap(double[] distance) {
+            this.distance = distance;
+            heap = new int[distance.length];
+            index = new int[distance.length];
+            Arrays.fill(index, -1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        // inserts the node or moves it up after its distance has decreased
+        void update(int node) {
+            int i = index[node];
+            if (i == -1) {
+                i = size++;
+                heap[i] = node;
+                index[node] = i;
+            }
+            siftUp(i);
+        }
+
+        int poll() {
+            int node = heap[0];
+            index[node] = -1;
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                index[heap[0]] = 0;
+                siftDown(0);
+            }
+            return node;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!less(heap[i], heap[parent])) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && less(heap[left], heap[smallest])) {
+                    smallest = left;
+                }
+                if (right < size && less(heap[right], heap[smallest])) {
+                    smallest = right;
+                }
+                if (smallest == i) {
+                    break;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private boolean less(int node1, int node2) {
+            if (distance[node1] != distance[node2]) {
+                return distance[node1] < distance[node2];
+            }
+            return node1 < node2;
+        }
+
+        private void swap(int i, int j) {
+            int node = heap[i];
+            heap[i] = heap[j];
+            heap[j] = node;
+            index[heap[i]] = i;
+            index[heap[j]] = j;
+        }
+    }
+}
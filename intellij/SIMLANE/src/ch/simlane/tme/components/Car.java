@@ -2,10 +2,11 @@ package ch.simlane.tme.components;
 
 import ch.simlane.tme.Engine;
 import ch.simlane.tme.SimulationException;
+import ch.simlane.tme.jfr.LaneTransitionEvent;
+import jdk.jfr.EventType;
 
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import static ch.simlane.tme.components.TrafficLight.*;
 
@@ -26,7 +27,10 @@ public class Car {
     private static final double CC8 = 2.0; // standstill acceleration - m/s^2
     private static final double CC9 = 1.5; // acceleration at 80 km/h - m/s^2
 
-    private static Random random;
+    // the obstacle used when nothing is detected within the look ahead cutoff (never modified)
+    private static final Obstacle NO_OBSTACLE = new Obstacle(Engine.LOOK_AHEAD_CUTOFF, Obstacle.OBSTACLE_TYPE_UNKNOWN);
+    // lane transition events are only created while they are recorded, as lane transitions are frequent
+    private static final EventType LANE_TRANSITION_EVENT_TYPE = EventType.getEventType(LaneTransitionEvent.class);
 
     /*
      * A reference to an arbitrary object that represents the car outside the tme.
@@ -35,59 +39,137 @@ public class Car {
      */
     private Object ref;
 
+    // the random stream of this car (see Model.initializeRandom())
+    private SplittableRandom random;
+
     private Connector startConnector;
     private Connector endConnector;
     private List<Connector> path;
     private int pathIndex;
+    // the lanes along the path (resolved once when the path is set)
+    private Lane[] route;
+    // the distance in m from the start of the path to the start of each lane in the route
+    private double[] routeDistance;
 
     private int state;
 
+    /*
+     * The kinematic state of the car (position, speed, acceleration, distance moved, distance to the car
+     * ahead and lane index) is stored in a car store at the index given by the id of the car.
+     * See CarStore for the meaning of the different values.
+     */
+    private CarStore store;
+    private int id;
+
     // the lane on which this car is located
     private Lane lane;
-    // the position on the lane between 0 and 1
-    private double pos;
-    // the current speed in m/s
-    private double v;
-    // the current acceleration in m^2/s
-    private double a;
+    // the slot of this car in the ring buffer of the lane
+    private int laneSlot;
     // the lane ahead on which an orange traffic light is detected
     private Lane orangeLightLane;
     // the decision made (red or green) for the detected orange traffic light
     private TrafficLight orangeLightInterpretation;
 
-    // the distance in m moved in the last update
-    private double dx;
-    // the distance in m to the car ahead
-    private double dxCarAhead;
     // the car ahead as determined by the previous look ahead
     private Car carAhead;
+    // the update in which this car moved last (see CarStore.nextTick())
+    private long movedTick;
+
+    /*
+     * The obstacles detected by the previous look ahead. The obstacles are reused by every look ahead
+     * so updating a car does not allocate any memory.
+     */
+    private Obstacle[] obstacles;
+    private int numObstacles;
+    private Obstacle carObstacle;
+    private Obstacle redLightObstacle;
 
     public Car(Object ref) {
         this.ref = ref;
         state = CAR_STATE_NEW;
+        obstacles = new Obstacle[2];
+        carObstacle = new Obstacle(0, 0, 0);
+        redLightObstacle = new Obstacle(0, Obstacle.OBSTACLE_TYPE_RED_TRAFFIC_LIGHT);
+        // a standalone car has its own store until it is added to a model
+        attach(new CarStore(1));
     }
 
-    private static double random() {
-        if (random == null) {
-            random = new Random();
+    // creates a car for a trip of the specified demand (the path of the demand must be set)
+    public Car(Demand demand) {
+        this(demand.getRef());
+        startConnector = demand.getStartConnector();
+        endConnector = demand.getEndConnector();
+        setPath(demand.getPath());
+    }
+
+    // moves the state of this car to the specified store
+    void attach(CarStore store) {
+        int id = store.add(this);
+        if (this.store != null) {
+            store.copy(this.store, this.id, id);
         }
+        this.store = store;
+        this.id = id;
+    }
+
+    /*
+     * Copies the state of the specified car which changes in an update (including the decisions about traffic
+     * lights) to this car. The lane of the car is copied, but the car is not added to it (used by benchmarks to
+     * restore a car which has not changed its lane since the copy).
+     */
+    void copyState(Car car) {
+        state = car.state;
+        pathIndex = car.pathIndex;
+        lane = car.lane;
+        laneSlot = car.laneSlot;
+        orangeLightLane = car.orangeLightLane;
+        orangeLightInterpretation = car.orangeLightInterpretation;
+        carAhead = car.carAhead;
+        movedTick = car.movedTick;
+        store.copy(car.store, car.id, id);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    private double random() {
         return random.nextDouble();
     }
 
+    public void setRandom(SplittableRandom random) {
+        this.random = random;
+    }
+
     public void reset() {
         state = CAR_STATE_NEW;
         pathIndex = 0;
-        lane = null;
-        pos = 0;
-        v = 0;
-        a = 0;
+        setLane(null);
+        store.pos[id] = 0;
+        store.v[id] = 0;
+        store.a[id] = 0;
         orangeLightLane = null;
         orangeLightInterpretation = null;
-        dx = 0;
-        dxCarAhead = 0;
+        store.dx[id] = 0;
+        store.dxCarAhead[id] = 0;
         carAhead = null;
     }
 
+    // reuses this arrived car for a trip of the specified demand (the id of the car does not change)
+    public void reuse(Demand demand) {
+        if (state != CAR_STATE_ARRIVED) {
+            throw new IllegalStateException("Only arrived cars can be reused.");
+        }
+        ref = demand.getRef();
+        startConnector = demand.getStartConnector();
+        endConnector = demand.getEndConnector();
+        // the lanes of the path are only resolved again if the path changes
+        if (demand.getPath() != path) {
+            setPath(demand.getPath());
+        }
+        reset();
+    }
+
     public Connector getStartConnector() {
         return startConnector;
     }
@@ -112,84 +194,195 @@ public class Car {
             throw new IllegalStateException("The specified path does not match the start and end points");
         }
         this.path = path;
+        route = new Lane[path.size() - 1];
+        routeDistance = new double[route.length];
+        double distance = 0;
+        for (int i = 0; i < route.length; i++) {
+            route[i] = path.get(i).getLaneTo(path.get(i + 1));
+            routeDistance[i] = distance;
+            distance += route[i].getLength();
+        }
     }
 
     public int getState() {
         return state;
     }
 
+    // the first lane of the path, on which the car enters the model
+    public Lane getEntryLane() {
+        if (route == null) {
+            throw new IllegalStateException("The path of this car is not set.");
+        }
+        return route[0];
+    }
+
     public Lane getLane() {
         return lane;
     }
 
+    private void setLane(Lane lane) {
+        this.lane = lane;
+        store.lane[id] = (lane == null) ? -1 : lane.getIndex();
+    }
+
+    int getLaneSlot() {
+        return laneSlot;
+    }
+
+    void setLaneSlot(int laneSlot) {
+        this.laneSlot = laneSlot;
+    }
+
     public double getPos() {
-        return pos;
+        return store.pos[id];
     }
 
     public void setPos(double pos) {
-        this.pos = pos;
+        store.pos[id] = pos;
+    }
+
+    public double getV() {
+        return store.v[id];
+    }
+
+    public double getA() {
+        return store.a[id];
     }
 
     public Object getRef() {
         return ref;
     }
 
+    /**
+     * Updates the car on its own (both phases of an update, see prepare() and commit()).
+     */
     public void update(long dt) throws SimulationException {
+        prepare(dt);
+        commit(dt);
+    }
+
+    /**
+     * First phase of an update: calculates the next acceleration of the car from the state of the previous update.
+     * Only the state of this car is modified, so the first phase can be run for all cars in parallel.
+     */
+    public void prepare(long dt) {
+        if (state != CAR_STATE_ACTIVE || dt <= 0 || endOfPathReached()) {
+            return;
+        }
+        lookAhead();
+        calculateAcceleration();
+    }
+
+    /**
+     * Second phase of an update: enters, moves or removes the car using the acceleration from the first phase.
+     * The second phase must be run sequentially for all cars.
+     */
+    public void commit(long dt) throws SimulationException {
         if (state == CAR_STATE_NEW) {
             double dx = Engine.LOOK_AHEAD_CUTOFF;
-            List<Obstacle> obstacles = lookAhead();
-            for (Obstacle o : obstacles) {
+            lookAhead();
+            for (int i = 0; i < numObstacles; i++) {
+                Obstacle o = obstacles[i];
+                double dxObstacle = o.dx;
                 if (o.type == Obstacle.OBSTACLE_TYPE_CAR) {
-                    o.dx -= Engine.MIN_CAR_DISTANCE;
+                    dxObstacle -= Engine.MIN_CAR_DISTANCE;
                 }
-                dx = Math.min(dx, o.dx);
+                dx = Math.min(dx, dxObstacle);
             }
             if (dx >= 0) {
-                lane = getLaneInPath(pathIndex);
+                setLane(getLaneInPath(pathIndex));
                 lane.add(this);
                 state = CAR_STATE_ACTIVE;
+                // the car ahead checks the pair when it moves (see detectCrash())
+                movedTick = store.tick;
             }
         } else if (state == CAR_STATE_ACTIVE) {
             if (endOfPathReached()) {
                 lane.remove(this);
                 pathIndex++;
-                lane = null;
-                pos = 0;
-                dx = 0;
+                setLane(null);
+                store.pos[id] = 0;
+                store.dx[id] = 0;
                 state = CAR_STATE_ARRIVED;
             } else {
                 if (dt <= 0) {
                     return;
                 }
-                List<Obstacle> obstacles = lookAhead();
-                calculateAcceleration(obstacles);
+                store.a[id] = store.aNext[id];
                 move(dt);
             }
         }
     }
 
     private void move(long dt) throws SimulationException {
-        v += a * (dt / 1000.0);
+        double v = store.v[id] + store.a[id] * (dt / 1000.0);
         v = Math.max(v, 0);
+        store.v[id] = v;
         double dx = v * (dt / 1000.0);
-        this.dx = dx;
+        store.dx[id] = dx;
         while (dx > 0) {
             dx = lane.move(this, dx);
             if (endOfPathReached()) {
-                this.dx -= dx;
-                return;
+                store.dx[id] -= dx;
+                break;
             }
             if (dx > 0) {
+                Lane previous = lane;
                 lane.remove(this);
                 pathIndex++;
-                lane = getLaneInPath(pathIndex);
+                setLane(getLaneInPath(pathIndex));
                 lane.add(this);
+                laneTransition(previous);
                 if (lane == orangeLightLane) {
                     orangeLightLane = null;
                     orangeLightInterpretation = null;
                 }
             }
         }
+        movedTick = store.tick;
+        if (store.detectCrashes) {
+            detectCrash();
+        }
+    }
+
+    /*
+     * A cheap alternative to validate() which only checks the cars on the same lane. Each pair of neighbouring
+     * cars is checked by the car which moves second, once the positions of both cars are final. A neighbour which
+     * has not moved yet in this step is skipped, as it moves later and then checks the pair itself. Every active
+     * car moves in every step (a stopped car by 0 m) and a car which enters counts as moved, so no pair is missed.
+     */
+    private void detectCrash() throws SimulationException {
+        if (!lane.isLastCar(this)) {
+            Car carAhead = lane.getCarAhead(this);
+            if (carAhead.movedTick == movedTick) {
+                detectCrash(this, carAhead);
+            }
+        }
+        Car carBehind = lane.getCarBehind(this);
+        if (carBehind != null && carBehind.movedTick == movedTick) {
+            detectCrash(carBehind, this);
+        }
+    }
+
+    private static void detectCrash(Car car, Car carAhead) throws SimulationException {
+        double dx = (carAhead.getPos() - car.getPos()) * car.lane.getLength() - Engine.CAR_LENGTH;
+        if (dx <= 0) {
+            throw new SimulationException("Car crash detected.");
+        }
+    }
+
+    private void laneTransition(Lane previous) {
+        if (!LANE_TRANSITION_EVENT_TYPE.isEnabled()) {
+            return;
+        }
+        LaneTransitionEvent event = new LaneTransitionEvent();
+        if (event.shouldCommit()) {
+            event.car = id;
+            event.fromLane = previous.getIndex();
+            event.toLane = lane.getIndex();
+            event.speed = store.v[id];
+            event.commit();
+        }
     }
 
     public void validate() throws SimulationException {
@@ -199,17 +392,16 @@ public class Car {
         if (carAhead == null || carAhead.getState() == CAR_STATE_ARRIVED) {
             return;
         }
-        if (dxCarAhead - (dx - carAhead.dx) <= 0) {
+        if (store.dxCarAhead[id] - (store.dx[id] - carAhead.store.dx[carAhead.id]) <= 0) {
             throw new SimulationException("Car crash detected.");
         }
     }
 
-    private List<Obstacle> lookAhead() {
+    private void lookAhead() {
         this.carAhead = null;
-        this.dxCarAhead = 0;
-        List<Obstacle> obstacles = new LinkedList<>();
-        Obstacle carAhead;
-        Obstacle redLightAhead = null;
+        store.dxCarAhead[id] = 0;
+        boolean carAhead;
+        boolean redLightAhead = false;
         double dx;
         double cutoffShift = 0;
         Lane lane = this.lane;
@@ -224,69 +416,70 @@ public class Car {
             redLightAhead = lookAheadForRedLight(lane, dx);
         }
         dx += lane.distanceFromCarToEnd(this);
+        // the distance to the start of lane i is (dxStart + routeDistance[i])
+        double dxStart = dx - getDistanceInPath(pathIndex + 1);
         for (int i = pathIndex + 1; pathContainsLane(i); i++) {
-            if (carAhead != null) {
+            dx = dxStart + routeDistance[i];
+            if (carAhead) {
                 cutoffShift = Engine.CAR_LENGTH * 0.5;
             }
             if (dx + cutoffShift > Engine.LOOK_AHEAD_CUTOFF) {
                 break;
             }
             lane = getLaneInPath(i);
-            if (carAhead == null) {
+            if (!carAhead) {
                 carAhead = lookAheadForCar(lane, dx, false);
             }
-            if (redLightAhead == null) {
+            if (!redLightAhead) {
                 redLightAhead = lookAheadForRedLight(lane, dx);
             }
-            if (carAhead != null && redLightAhead != null) {
+            if (carAhead && redLightAhead) {
                 break;
             }
-            dx += lane.getLength();
-        }
-        if (carAhead != null) {
-            obstacles.add(carAhead);
         }
-        if (redLightAhead != null) {
-            obstacles.add(redLightAhead);
+        numObstacles = 0;
+        if (carAhead && carObstacle.dx <= Engine.LOOK_AHEAD_CUTOFF) {
+            obstacles[numObstacles++] = carObstacle;
         }
-        for (Obstacle o : obstacles) {
-            if (o.dx > Engine.LOOK_AHEAD_CUTOFF) {
-                obstacles.remove(o);
-            }
+        if (redLightAhead && redLightObstacle.dx <= Engine.LOOK_AHEAD_CUTOFF) {
+            obstacles[numObstacles++] = redLightObstacle;
         }
-        if (obstacles.isEmpty()) {
-            obstacles.add(new Obstacle(Engine.LOOK_AHEAD_CUTOFF, Obstacle.OBSTACLE_TYPE_UNKNOWN));
+        if (numObstacles == 0) {
+            obstacles[numObstacles++] = NO_OBSTACLE;
         }
-        return obstacles;
     }
 
-    private Obstacle lookAheadForCar(Lane lane, double dx, boolean isCurrentLane) {
+    // detects the car ahead and stores it in the car obstacle
+    private boolean lookAheadForCar(Lane lane, double dx, boolean isCurrentLane) {
         Car carAhead;
         if (isCurrentLane) {
             if (lane.isLastCar(this)) {
-                return null;
+                return false;
             }
             carAhead = lane.getCarAhead(this);
             dx += lane.availableDistanceFromCar(this);
         } else {
             if (lane.isEmpty()) {
-                return null;
+                return false;
             }
             carAhead = lane.getFirstCar();
             dx += lane.availableDistanceFromStart();
         }
         this.carAhead = carAhead;
-        this.dxCarAhead = dx;
-        return new Obstacle(dx, carAhead.v, carAhead.a);
+        store.dxCarAhead[id] = dx;
+        carObstacle.set(dx, carAhead.getV(), carAhead.getA());
+        return true;
     }
 
-    private Obstacle lookAheadForRedLight(Lane lane, double dx) {
+    // detects a red (or orange interpreted as red) traffic light and stores it in the red light obstacle
+    private boolean lookAheadForRedLight(Lane lane, double dx) {
         dx += Engine.CAR_LENGTH * 0.5;
         TrafficLight light = interpretTrafficLight(lane, dx);
         if (light == RED) {
-            return new Obstacle(dx, Obstacle.OBSTACLE_TYPE_RED_TRAFFIC_LIGHT);
+            redLightObstacle.set(dx, 0, 0);
+            return true;
         }
-        return null;
+        return false;
     }
 
     private TrafficLight interpretTrafficLight(Lane lane, double dx) {
@@ -309,6 +502,7 @@ public class Car {
     }
 
     private TrafficLight interpretOrangeLight(double dx) {
+        double v = store.v[id];
         if (v <= 0) {
             return RED;
         }
@@ -319,15 +513,17 @@ public class Car {
         return dxMin < dx ? RED : GREEN;
     }
 
-    private void calculateAcceleration(List<Obstacle> obstacles) {
+    private void calculateAcceleration() {
         double a = Double.MAX_VALUE;
-        for (Obstacle obstacle : obstacles) {
-            a = Math.min(a, calculateAcceleration(obstacle));
+        for (int i = 0; i < numObstacles; i++) {
+            a = Math.min(a, calculateAcceleration(obstacles[i]));
         }
-        this.a = a;
+        store.aNext[id] = a;
     }
 
     private double calculateAcceleration(Obstacle obstacle) {
+        double v = store.v[id];
+        double aPrevious = store.a[id];
         double a = 0;
         double dx = obstacle.dx;
         double dv = obstacle.v - v;
@@ -358,9 +554,9 @@ public class Car {
             if (v > 0) {
                 if (dv < 0) {
                     if (dx > CC0) {
-                        a = Math.min(obstacle.a + dv * dv / (CC0 - dx), this.a);
+                        a = Math.min(obstacle.a + dv * dv / (CC0 - dx), aPrevious);
                     } else {
-                        a = Math.min(obstacle.a + 0.5 * (dv - sdvo), this.a);
+                        a = Math.min(obstacle.a + 0.5 * (dv - sdvo), aPrevious);
                     }
                 }
                 if (a > -CC7) {
@@ -374,10 +570,10 @@ public class Car {
             a = Math.max(0.5 * dv * dv / (-dx + sdxc - 0.1), -10 + 0.5 * Math.sqrt(v));
         } else if (dv < sdvo && dx < sdxo) {
             // follow
-            if (this.a <= 0) {
-                a = Math.min(this.a, -CC7);
+            if (aPrevious <= 0) {
+                a = Math.min(aPrevious, -CC7);
             } else {
-                a = Math.max(this.a, CC7);
+                a = Math.max(aPrevious, CC7);
                 a = Math.min(a, Engine.SPEED_LIMIT - v);
             }
         } else {
@@ -394,20 +590,27 @@ public class Car {
     }
 
     private boolean endOfPathReached() {
-        return lane == getLastLaneInPath() && pos == 1;
+        return lane == getLastLaneInPath() && store.pos[id] == 1;
     }
 
     private boolean pathContainsLane(int index) {
-        return index + 1 < path.size();
+        return index < route.length;
     }
 
     private Lane getLaneInPath(int index) {
-        return path.get(index).getLaneTo(path.get(index + 1));
+        return route[index];
     }
 
     private Lane getLastLaneInPath() {
-        int index = path.size() - 2;
-        return getLaneInPath(index);
+        return route[route.length - 1];
+    }
+
+    // the distance in m from the start of the path to the start of the specified lane (or the end of the path)
+    private double getDistanceInPath(int index) {
+        if (index < route.length) {
+            return routeDistance[index];
+        }
+        return routeDistance[route.length - 1] + route[route.length - 1].getLength();
     }
 
     private static class Obstacle {
@@ -435,5 +638,11 @@ public class Car {
             this.a = 0;
             this.type = type;
         }
+
+        void set(double dx, double v, double a) {
+            this.dx = dx;
+            this.v = v;
+            this.a = a;
+        }
     }
 }
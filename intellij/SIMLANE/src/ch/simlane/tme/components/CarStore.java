@@ -0,0 +1,132 @@
+package ch.simlane.tme.components;
+
+import java.util.Arrays;
+
+/**
+ * Stores the kinematic state of cars in primitive arrays indexed by the id of the car (structure of arrays).
+ * A car is a thin view onto one index of a store. All cars of a model share the store of the model,
+ * which allows the update loop to scan the state of many cars sequentially.
+ */
+public class CarStore {
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    // the position on the lane between 0 and 1
+    double[] pos;
+    // the current speed in m/s
+    double[] v;
+    // the current acceleration in m/s^2
+    double[] a;
+    // the acceleration in m/s^2 calculated for the next move (see Car.prepare())
+    double[] aNext;
+    // the distance in m moved in the last update
+    double[] dx;
+    // the distance in m to the car ahead
+    double[] dxCarAhead;
+    // the index of the lane on which the car is located (see Lane.getIndex()) or -1
+    int[] lane;
+
+    private Car[] cars;
+    private int size;
+
+    // the number of the current update, every car remembers the update in which it last moved (see Car.move())
+    long tick;
+    // whether the cars detect crashes with the cars ahead and behind them on the same lane while moving
+    boolean detectCrashes;
+
+    public CarStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    CarStore(int capacity) {
+        pos = new double[capacity];
+        v = new double[capacity];
+        a = new double[capacity];
+        aNext = new double[capacity];
+        dx = new double[capacity];
+        dxCarAhead = new double[capacity];
+        lane = new int[capacity];
+        cars = new Car[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Car getCar(int id) {
+        return cars[id];
+    }
+
+    public double getPos(int id) {
+        return pos[id];
+    }
+
+    public double getV(int id) {
+        return v[id];
+    }
+
+    public double getA(int id) {
+        return a[id];
+    }
+
+    public int getLaneIndex(int id) {
+        return lane[id];
+    }
+
+    // starts the next update of the cars in this store
+    public void nextTick() {
+        tick++;
+    }
+
+    public void setCrashDetection(boolean detectCrashes) {
+        this.detectCrashes = detectCrashes;
+    }
+
+    // moves the state of the specified car into this store (the id of the car changes)
+    public void attach(Car car) {
+        car.attach(this);
+    }
+
+    // removes the cars with an id from size on (used to drop the cars generated by a simulation)
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IllegalArgumentException("Invalid size " + size + ".");
+        }
+        Arrays.fill(cars, size, this.size, null);
+        this.size = size;
+    }
+
+    // adds the specified car to this store and returns its id
+    int add(Car car) {
+        if (size == cars.length) {
+            grow();
+        }
+        int id = size++;
+        cars[id] = car;
+        lane[id] = -1;
+        return id;
+    }
+
+    // copies the state of a car from another store
+    void copy(CarStore from, int fromId, int toId) {
+        pos[toId] = from.pos[fromId];
+        v[toId] = from.v[fromId];
+        a[toId] = from.a[fromId];
+        aNext[toId] = from.aNext[fromId];
+        dx[toId] = from.dx[fromId];
+        dxCarAhead[toId] = from.dxCarAhead[fromId];
+        lane[toId] = from.lane[fromId];
+    }
+
+    private void grow() {
+        int capacity = Math.max(cars.length * 2, 1);
+        pos = Arrays.copyOf(pos, capacity);
+        v = Arrays.copyOf(v, capacity);
+        a = Arrays.copyOf(a, capacity);
+        aNext = Arrays.copyOf(aNext, capacity);
+        dx = Arrays.copyOf(dx, capacity);
+        dxCarAhead = Arrays.copyOf(dxCarAhead, capacity);
+        lane = Arrays.copyOf(lane, capacity);
+        cars = Arrays.copyOf(cars, capacity);
+    }
+}
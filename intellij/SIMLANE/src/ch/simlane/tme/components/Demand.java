@@ -0,0 +1,70 @@
+package ch.simlane.tme.components;
+
+import java.util.List;
+
+/**
+ * A number of trips of the same kind of car from a start connector to an end connector.
+ * The cars of a demand are only created when they are about to enter (see Simulation), so the number
+ * of car objects is bounded by the number of cars on the road instead of the number of trips.
+ */
+public class Demand {
+
+    // the reference of the cars (see Car.getRef())
+    private Object ref;
+
+    private Connector startConnector;
+    private Connector endConnector;
+    private List<Connector> path;
+
+    // the number of trips
+    private int count;
+
+    public Demand(Object ref, Connector startConnector, Connector endConnector, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("The count must not be negative.");
+        }
+        this.ref = ref;
+        this.startConnector = startConnector;
+        this.endConnector = endConnector;
+        this.count = count;
+    }
+
+    public Object getRef() {
+        return ref;
+    }
+
+    public Connector getStartConnector() {
+        return startConnector;
+    }
+
+    public Connector getEndConnector() {
+        return endConnector;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public List<Connector> getPath() {
+        return path;
+    }
+
+    // the path is shared by all cars of this demand
+    public void setPath(List<Connector> path) {
+        if (path.size() < 2) {
+            throw new IllegalStateException("The specified path contains less than two entries.");
+        }
+        if (path.get(0) != startConnector || path.get(path.size() - 1) != endConnector) {
+            throw new IllegalStateException("The specified path does not match the start and end points");
+        }
+        this.path = path;
+    }
+
+    // the first lane of the path, on which the cars enter the model
+    public Lane getEntryLane() {
+        if (path == null) {
+            throw new IllegalStateException("The path of this demand is not set.");
+        }
+        return path.get(0).getLaneTo(path.get(1));
+    }
+}
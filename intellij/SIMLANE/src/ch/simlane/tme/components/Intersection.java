@@ -1,20 +1,47 @@
 package ch.simlane.tme.components;
 
+import ch.simlane.tme.jfr.PhaseSwitchEvent;
+
 import java.util.*;
 
 public class Intersection {
 
+    // the maximum number of lane groups (one bit per group, see LaneGroup.updateConflictMask())
+    private static final int MAX_LANE_GROUPS = Integer.SIZE;
+
     private TrafficController controller;
     private List<LaneGroup> blocked;
+    // the bits of the lane groups which contain cars
+    private int occupied;
 
     private List<LaneGroup> laneGroups;
     private List<LaneGroup> initialOrder;
 
+    // the index of the intersection in its model (or -1)
+    private int index;
+
     public Intersection(List<LaneGroup> laneGroups) {
+        if (laneGroups.size() > MAX_LANE_GROUPS) {
+            throw new IllegalArgumentException("Too many lane groups in a single intersection.");
+        }
         blocked = new LinkedList<>();
-        laneGroups.forEach(group -> group.setIntersection(this));
+        int bit = 1;
+        for (LaneGroup group : laneGroups) {
+            group.setIntersection(this, bit);
+            bit <<= 1;
+        }
+        laneGroups.forEach(LaneGroup::updateConflictMask);
         this.laneGroups = laneGroups;
         initialOrder = new LinkedList<>(laneGroups);
+        index = -1;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
     }
 
     public void initialize() {
@@ -29,7 +56,19 @@ public class Intersection {
         for (LaneGroup group : laneGroups) {
             group.reset();
         }
-        laneGroups = initialOrder;
+        laneGroups = new LinkedList<>(initialOrder);
+    }
+
+    int getOccupied() {
+        return occupied;
+    }
+
+    void setOccupied(int bit, boolean occupied) {
+        if (occupied) {
+            this.occupied |= bit;
+        } else {
+            this.occupied &= ~bit;
+        }
     }
 
     public void update(long dt) {
@@ -38,11 +77,7 @@ public class Intersection {
     }
 
     private void updateBlocked() {
-        for (LaneGroup group : blocked) {
-            if (!group.isBlocked(true)) {
-                blocked.remove(group);
-            }
-        }
+        blocked.removeIf(group -> !group.isBlocked(true));
     }
 
     private class TrafficController {
@@ -104,6 +139,7 @@ public class Intersection {
             groups.forEach(group -> group.setState(TrafficLight.GREEN));
             // potentially blocked lanes
             blocked.addAll(groups);
+            phaseSwitched("ACTIVE", groups.size());
         }
 
         private void switchToTrap() {
@@ -115,6 +151,7 @@ public class Intersection {
             orange.addAll(groups);
             // change state
             groups.forEach(group -> group.setState(TrafficLight.ORANGE));
+            phaseSwitched("TRAP", groups.size());
         }
 
         private void switchToAllRed() {
@@ -125,6 +162,17 @@ public class Intersection {
             red.addAll(groups);
             // change state
             groups.forEach(group -> group.setState(TrafficLight.RED));
+            phaseSwitched("ALL_RED", groups.size());
+        }
+
+        private void phaseSwitched(String phase, int laneGroups) {
+            PhaseSwitchEvent event = new PhaseSwitchEvent();
+            if (event.shouldCommit()) {
+                event.intersection = index;
+                event.phase = phase;
+                event.laneGroups = laneGroups;
+                event.commit();
+            }
         }
 
         private List<LaneGroup> getNextActive() {
@@ -2,12 +2,12 @@ package ch.simlane.tme.components;
 
 import ch.simlane.tme.SimulationException;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
 public class Lane {
 
     private static final double MIN_LANE_LENGTH = 10;
+    private static final int INITIAL_CAPACITY = 8; // must be a power of two
 
     private LaneGroup laneGroup;
 
@@ -16,8 +16,21 @@ public class Lane {
     // the length of the lane in meters
     private double l;
 
-    // a list of the cars that are located on this lane (used for lookahead)
-    private List<Car> cars;
+    // the index of the lane in its model (or -1)
+    private int index;
+
+    /*
+     * A ring buffer of the cars that are located on this lane (used for lookahead).
+     * Cars enter at the tail and leave at the head, so the cars are ordered by their position
+     * on the lane. Every car knows its slot (see Car.getLaneSlot()), which makes looking up
+     * the car ahead and entering and leaving the lane constant time operations.
+     * Slots are increasing counters; the index into the array is (slot & (cars.length - 1)).
+     */
+    private Car[] cars;
+    // the slot of the car closest to the end of the lane
+    private int head;
+    // the slot after the car closest to the start of the lane
+    private int tail;
 
     public Lane(double l, LaneGroup laneGroup, Connector end) {
         if (l < MIN_LANE_LENGTH) {
@@ -26,13 +39,25 @@ public class Lane {
         this.l = l;
         this.laneGroup = laneGroup;
         this.end = end;
-        cars = new LinkedList<>();
+        index = -1;
+        cars = new Car[INITIAL_CAPACITY];
         end.addIn(this);
         laneGroup.addLane(this);
     }
 
     public void reset() {
-        cars.clear();
+        laneGroup.resetNumCars();
+        Arrays.fill(cars, null);
+        head = 0;
+        tail = 0;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
     }
 
     public Connector getStart() {
@@ -56,7 +81,11 @@ public class Lane {
     }
 
     public boolean isEmpty() {
-        return cars.isEmpty();
+        return head == tail;
+    }
+
+    public int size() {
+        return tail - head;
     }
 
     public double getLength() {
@@ -64,77 +93,115 @@ public class Lane {
     }
 
     public double availableDistanceFromCar(Car car) {
-        int index = cars.indexOf(car);
-        if (index == -1) {
+        if (!contains(car)) {
             return availableDistanceFromStart();
-        } else {
-            if (index + 1 < cars.size()) {
-                double nextCarPos = cars.get(index + 1).getPos();
-                return (nextCarPos - car.getPos()) * l;
-            }
-            return (1 - car.getPos()) * l;
         }
+        int slot = car.getLaneSlot();
+        if (slot != head) {
+            double nextCarPos = get(slot - 1).getPos();
+            return (nextCarPos - car.getPos()) * l;
+        }
+        return (1 - car.getPos()) * l;
     }
 
     public double availableDistanceFromStart() {
         if (isEmpty()) {
             return l;
         }
-        return cars.get(0).getPos() * l;
+        return getFirstCar().getPos() * l;
     }
 
     public double distanceFromCarToEnd(Car car) {
-        int index = cars.indexOf(car);
-        if (index == -1) {
+        if (!contains(car)) {
             return l;
-        } else {
-            return (1 - car.getPos()) * l;
         }
+        return (1 - car.getPos()) * l;
     }
 
     public boolean isLastCar(Car car) {
-        int index = cars.indexOf(car);
-        if (index == -1) {
+        if (!contains(car)) {
             throw new IllegalStateException("The specified car is not on this lane.");
         }
-        return index == cars.size() - 1;
+        return car.getLaneSlot() == head;
     }
 
     public Car getFirstCar() {
         if (isEmpty()) {
             throw new IllegalStateException("This lane does not contain any cars.");
         }
-        return cars.get(0);
+        return get(tail - 1);
     }
 
     public Car getCarAhead(Car car) {
         if (isLastCar(car)) {
             throw new IllegalStateException("The specified car is the last car on this lane.");
         }
-        return cars.get(cars.indexOf(car) + 1);
+        return get(car.getLaneSlot() - 1);
+    }
+
+    // returns the car behind the specified car or null if it is the first car on this lane
+    public Car getCarBehind(Car car) {
+        if (!contains(car)) {
+            throw new IllegalStateException("The specified car is not on this lane.");
+        }
+        int slot = car.getLaneSlot() + 1;
+        return slot == tail ? null : get(slot);
     }
 
     public void add(Car car) throws SimulationException {
         if (getState() == TrafficLight.RED) {
             throw new SimulationException("Red traffic light violated.");
         }
+        if (size() == cars.length) {
+            grow();
+        }
         car.setPos(0);
-        cars.add(0, car);
+        set(tail, car);
+        tail++;
+        laneGroup.carEntered();
     }
 
     public void remove(Car car) {
-        if (!cars.contains(car)) {
+        if (!contains(car)) {
             throw new IllegalStateException("The specified car is not on this lane.");
         }
         if (car.getPos() != 1) {
             throw new IllegalStateException("The specified car has not yet reached the end of this lane.");
         }
-        cars.remove(car);
+        int slot = car.getLaneSlot();
+        // usually the car closest to the end leaves the lane, otherwise close the gap behind it
+        for (int i = slot; i != head; i--) {
+            set(i, get(i - 1));
+        }
+        cars[head & (cars.length - 1)] = null;
+        head++;
+        laneGroup.carLeft();
+    }
+
+    private boolean contains(Car car) {
+        int slot = car.getLaneSlot();
+        return slot - head >= 0 && tail - slot > 0 && get(slot) == car;
+    }
+
+    private Car get(int slot) {
+        return cars[slot & (cars.length - 1)];
+    }
+
+    private void set(int slot, Car car) {
+        cars[slot & (cars.length - 1)] = car;
+        car.setLaneSlot(slot);
+    }
+
+    private void grow() {
+        Car[] old = cars;
+        cars = new Car[old.length * 2];
+        for (int slot = head; slot != tail; slot++) {
+            cars[slot & (cars.length - 1)] = old[slot & (old.length - 1)];
+        }
     }
 
     public double move(Car car, double dx) {
-        int index = cars.indexOf(car);
-        if (index == -1) {
+        if (!contains(car)) {
             throw new IllegalStateException("The specified car is not on this lane.");
         }
         double pos = car.getPos();
@@ -158,7 +225,8 @@ public class Lane {
             return;
         }
         double pos = Double.NEGATIVE_INFINITY;
-        for (Car car : cars) {
+        for (int slot = tail - 1; slot - head >= 0; slot--) {
+            Car car = get(slot);
             if (pos >= car.getPos()) {
                 throw new SimulationException("Inconsistent lane state detected.");
             }
@@ -12,6 +12,12 @@ public class LaneGroup {
     private TrafficLight state;
     private boolean blocked;
     private List<Lane> lanes;
+    // the number of cars on the lanes of this group (see Lane.add() and Lane.remove())
+    private int numCars;
+
+    // the bit of this group within its intersection and the bits of the groups intersecting with it
+    private int bit;
+    private int conflictMask;
 
     private Connector start;
 
@@ -68,29 +74,52 @@ public class LaneGroup {
     public boolean isBlocked(boolean update) {
         if (update) {
             blocked = false;
-            if (state != TrafficLight.RED) {
-                for (LaneGroup group : intersectingGroups) {
-                    if (group.containsCars()) {
-                        blocked = true;
-                        break;
-                    }
-                }
+            if (state != TrafficLight.RED && intersection != null) {
+                // a group is blocked while any intersecting group contains cars
+                blocked = (intersection.getOccupied() & conflictMask) != 0;
             }
         }
         return blocked;
     }
 
-    private boolean containsCars() {
-        for (Lane lane : lanes) {
-            if (!lane.isEmpty()) {
-                return true;
-            }
+    public int getNumCars() {
+        return numCars;
+    }
+
+    void carEntered() {
+        numCars++;
+        if (numCars == 1 && intersection != null) {
+            intersection.setOccupied(bit, true);
+        }
+    }
+
+    void carLeft() {
+        numCars--;
+        if (numCars == 0 && intersection != null) {
+            intersection.setOccupied(bit, false);
         }
-        return false;
     }
 
-    void setIntersection(Intersection intersection) {
+    void resetNumCars() {
+        numCars = 0;
+        if (intersection != null) {
+            intersection.setOccupied(bit, false);
+        }
+    }
+
+    void setIntersection(Intersection intersection, int bit) {
         this.intersection = intersection;
+        this.bit = bit;
+    }
+
+    // must be called after the bits of all groups in the intersection have been set
+    void updateConflictMask() {
+        conflictMask = 0;
+        for (LaneGroup group : intersectingGroups) {
+            if (group.intersection == intersection) {
+                conflictMask |= group.bit;
+            }
+        }
     }
 
     boolean intersectsWith(LaneGroup group) {
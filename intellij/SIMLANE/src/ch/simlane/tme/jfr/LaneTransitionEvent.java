@@ -0,0 +1,35 @@
+package ch.simlane.tme.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Recorded by Java Flight Recorder whenever a car moves from one lane to the next lane of its path.
+ * No stack trace is recorded, as lane transitions are frequent.
+ */
+@Name("ch.simlane.tme.LaneTransition")
+@Label("Lane Transition")
+@Category({"SIMLANE", "TME"})
+@Description("A car moved onto the next lane of its path")
+@StackTrace(false)
+public class LaneTransitionEvent extends Event {
+
+    @Label("Car")
+    public int car;
+
+    @Label("From Lane")
+    @Description("The index of the lane in the model")
+    public int fromLane;
+
+    @Label("To Lane")
+    @Description("The index of the lane in the model")
+    public int toLane;
+
+    @Label("Speed")
+    @Description("The speed in m/s")
+    public double speed;
+}
@@ -0,0 +1,28 @@
+package ch.simlane.tme.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded by Java Flight Recorder whenever the traffic controller of an intersection switches its phase.
+ */
+@Name("ch.simlane.tme.PhaseSwitch")
+@Label("Phase Switch")
+@Category({"SIMLANE", "TME"})
+@Description("A traffic controller switched to another phase")
+public class PhaseSwitchEvent extends Event {
+
+    @Label("Intersection")
+    @Description("The index of the intersection in the model")
+    public int intersection;
+
+    @Label("Phase")
+    public String phase;
+
+    @Label("Lane Groups")
+    @Description("The number of lane groups whose traffic light changed")
+    public int laneGroups;
+}
@@ -0,0 +1,51 @@
+package ch.simlane.tme.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Recorded by Java Flight Recorder for every simulation step (see Simulation.nextStep()).
+ * The duration of the event is the duration of the step. No stack trace is recorded, as steps are frequent.
+ */
+@Name("ch.simlane.tme.SimulationStep")
+@Label("Simulation Step")
+@Category({"SIMLANE", "TME"})
+@Description("A step of the traffic simulation")
+@StackTrace(false)
+public class SimulationStepEvent extends Event {
+
+    @Label("Simulation Time")
+    @Timespan(Timespan.MILLISECONDS)
+    public long simulationTime;
+
+    @Label("Time Step")
+    @Timespan(Timespan.MILLISECONDS)
+    public long timeStep;
+
+    @Label("Cars")
+    public int cars;
+
+    @Label("Active Cars")
+    public int activeCars;
+
+    @Label("Update Intersections")
+    @Timespan
+    public long updateIntersections;
+
+    @Label("Update Cars")
+    @Timespan
+    public long updateCars;
+
+    @Label("Validate")
+    @Timespan
+    public long validate;
+
+    @Label("Update State")
+    @Timespan
+    public long updateState;
+}
@@ -0,0 +1,56 @@
+package ch.simlane.tme.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * An immutable summary of a latency histogram in microseconds.
+ * Exposed as composite data by the simulation metrics mbean.
+ */
+public class LatencySummary {
+
+    private long count;
+    private double mean;
+    private double p50;
+    private double p99;
+    private double max;
+
+    @ConstructorProperties({"count", "mean", "p50", "p99", "max"})
+    public LatencySummary(long count, double mean, double p50, double p99, double max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    static LatencySummary of(LatencyHistogram histogram) {
+        return new LatencySummary(histogram.getCount(), histogram.getMean() / 1000,
+                histogram.getPercentile(50) / 1000.0, histogram.getPercentile(99) / 1000.0,
+                histogram.getMax() / 1000.0);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count:%d, mean:%.1fus, p50:%.1fus, p99:%.1fus, max:%.1fus", count, mean, p50, p99, max);
+    }
+}
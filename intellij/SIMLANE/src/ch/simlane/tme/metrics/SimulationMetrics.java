@@ -0,0 +1,119 @@
+package ch.simlane.tme.metrics;
+
+/**
+ * Records the durations of the phases of every simulation step and the number of active cars.
+ * Written by the simulation thread, readable from any thread.
+ */
+public class SimulationMetrics implements SimulationMetricsMXBean {
+
+    private LatencyHistogram step;
+    private LatencyHistogram updateIntersections;
+    private LatencyHistogram updateCars;
+    private LatencyHistogram validate;
+    private LatencyHistogram updateState;
+
+    private volatile int activeCars;
+    private volatile int maxActiveCars;
+
+    public SimulationMetrics() {
+        step = new LatencyHistogram();
+        updateIntersections = new LatencyHistogram();
+        updateCars = new LatencyHistogram();
+        validate = new LatencyHistogram();
+        updateState = new LatencyHistogram();
+    }
+
+    // records a step from the nanoTime() before each phase and after the last phase
+    public void recordStep(long start, long carsStart, long validateStart, long stateStart, long end,
+                           int activeCars) {
+        step.record(end - start);
+        updateIntersections.record(carsStart - start);
+        updateCars.record(validateStart - carsStart);
+        validate.record(stateStart - validateStart);
+        updateState.record(end - stateStart);
+        this.activeCars = activeCars;
+        if (activeCars > maxActiveCars) {
+            maxActiveCars = activeCars;
+        }
+    }
+
+    public LatencyHistogram getStepHistogram() {
+        return step;
+    }
+
+    public LatencyHistogram getUpdateIntersectionsHistogram() {
+        return updateIntersections;
+    }
+
+    public LatencyHistogram getUpdateCarsHistogram() {
+        return updateCars;
+    }
+
+    public LatencyHistogram getValidateHistogram() {
+        return validate;
+    }
+
+    public LatencyHistogram getUpdateStateHistogram() {
+        return updateState;
+    }
+
+    @Override
+    public long getSteps() {
+        return step.getCount();
+    }
+
+    // the number of active cars after the last step
+    @Override
+    public int getActiveCars() {
+        return activeCars;
+    }
+
+    @Override
+    public int getMaxActiveCars() {
+        return maxActiveCars;
+    }
+
+    @Override
+    public LatencySummary getStep() {
+        return LatencySummary.of(step);
+    }
+
+    @Override
+    public LatencySummary getUpdateIntersections() {
+        return LatencySummary.of(updateIntersections);
+    }
+
+    @Override
+    public LatencySummary getUpdateCars() {
+        return LatencySummary.of(updateCars);
+    }
+
+    @Override
+    public LatencySummary getValidate() {
+        return LatencySummary.of(validate);
+    }
+
+    @Override
+    public LatencySummary getUpdateState() {
+        return LatencySummary.of(updateState);
+    }
+
+    @Override
+    public void reset() {
+        step.reset();
+        updateIntersections.reset();
+        updateCars.reset();
+        validate.reset();
+        updateState.reset();
+        activeCars = 0;
+        maxActiveCars = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulationMetrics[steps:" + getSteps() + ", activeCars:" + activeCars + ", maxActiveCars:" +
+                maxActiveCars + "]\n  step: " + getStep() + "\n  updateIntersections: " + getUpdateIntersections() +
+                "\n  updateCars: " + getUpdateCars() + "\n  validate: " + getValidate() + "\n  updateState: " +
+                getUpdateState();
+    }
+}
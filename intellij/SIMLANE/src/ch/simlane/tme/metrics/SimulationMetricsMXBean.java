@@ -0,0 +1,25 @@
+package ch.simlane.tme.metrics;
+
+/**
+ * The management interface of the simulation metrics. All durations are in microseconds.
+ */
+public interface SimulationMetricsMXBean {
+
+    long getSteps();
+
+    int getActiveCars();
+
+    int getMaxActiveCars();
+
+    LatencySummary getStep();
+
+    LatencySummary getUpdateIntersections();
+
+    LatencySummary getUpdateCars();
+
+    LatencySummary getValidate();
+
+    LatencySummary getUpdateState();
+
+    void reset();
+}
@@ -4,16 +4,23 @@ import ch.simlane.tme.components.Car;
 
 public class CarState {
 
+    private int id;
     private Object ref;
     private LaneState lane;
     private double pos;
 
     public CarState(Car car) {
+        id = car.getId();
         ref = car.getRef();
         lane = new LaneState(car.getLane());
         pos = car.getPos();
     }
 
+    // the id identifies the car across states, it is only reused for another car after the car arrived
+    public int getId() {
+        return id;
+    }
+
     public Object getRef() {
         return ref;
     }
@@ -7,16 +7,23 @@ import static ch.simlane.tme.components.Connector.ConnectorLocation;
 
 public class LaneState {
 
+    private int index;
     private ConnectorLocation start;
     private ConnectorLocation end;
     private TrafficLight state;
 
     public LaneState(Lane lane) {
+        index = lane.getIndex();
         start = lane.getStart().getLocation();
         end = lane.getEnd().getLocation();
         state = lane.getState();
     }
 
+    // the index of the lane in its model, identifies the lane across states
+    public int getIndex() {
+        return index;
+    }
+
     public ConnectorLocation getStart() {
         return start;
     }
@@ -1,43 +1,114 @@
 package ch.simlane.tme.state;
 
-import ch.simlane.tme.Simulation;
-import ch.simlane.tme.components.Car;
-import ch.simlane.tme.components.Lane;
-
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 
+/**
+ * A snapshot of the simulation.
+ * A keyframe contains all active cars and all lanes. Otherwise the state only contains the changes since the
+ * state with the previous sequence number: the cars which moved or entered the simulation, the ids of the cars
+ * which arrived and the lanes whose traffic light changed (see StateTracker).
+ * The changes apply to the state with the base sequence number, which is the previous state unless
+ * several states have been merged.
+ */
 public class SimulationState {
 
+    private long baseSequence;
+    private long sequence;
+    private boolean keyframe;
+
     private List<CarState> cars;
+    private List<Integer> arrivedCars;
     private List<LaneState> lanes;
 
     private long t; // milliseconds
 
-    public SimulationState(Simulation simulation, List<Car> cars, List<Lane> lanes) {
-        this.cars = new LinkedList<>();
-        this.lanes = new LinkedList<>();
-        t = simulation.getTime();
-        initialize(cars, lanes);
+    SimulationState(long sequence, boolean keyframe, long t) {
+        this(sequence - 1, sequence, keyframe, t);
+    }
+
+    private SimulationState(long baseSequence, long sequence, boolean keyframe, long t) {
+        this.baseSequence = baseSequence;
+        this.sequence = sequence;
+        this.keyframe = keyframe;
+        this.t = t;
+        cars = new ArrayList<>();
+        arrivedCars = new ArrayList<>();
+        lanes = new ArrayList<>();
+    }
+
+    void addCar(CarState car) {
+        cars.add(car);
     }
 
-    private void initialize(List<Car> cars, List<Lane> lanes) {
-        for (Car car : cars) {
-            if (car.getState() == Car.CAR_STATE_ACTIVE) {
-                this.cars.add(new CarState(car));
-            }
+    void addArrivedCar(int id) {
+        arrivedCars.add(id);
+    }
+
+    void addLane(LaneState lane) {
+        lanes.add(lane);
+    }
+
+    /**
+     * Combines two consecutive states into a single state containing the changes of both.
+     * Used to skip states without losing their changes.
+     */
+    public static SimulationState merge(SimulationState previous, SimulationState next) {
+        if (next.keyframe) {
+            return next;
+        }
+        if (next.baseSequence != previous.sequence) {
+            throw new IllegalArgumentException("The states are not consecutive.");
         }
-        for (Lane lane : lanes) {
-            this.lanes.add(new LaneState(lane));
+        SimulationState merged = new SimulationState(previous.baseSequence, next.sequence, previous.keyframe, next.t);
+        LinkedHashMap<Integer, CarState> cars = new LinkedHashMap<>();
+        LinkedHashSet<Integer> arrivedCars = new LinkedHashSet<>(previous.arrivedCars);
+        previous.cars.forEach(car -> cars.put(car.getId(), car));
+        for (int id : next.arrivedCars) {
+            cars.remove(id);
+            arrivedCars.add(id);
         }
+        for (CarState car : next.cars) {
+            cars.put(car.getId(), car);
+            arrivedCars.remove(car.getId());
+        }
+        merged.cars.addAll(cars.values());
+        if (!merged.keyframe) {
+            merged.arrivedCars.addAll(arrivedCars);
+        }
+        LinkedHashMap<Integer, LaneState> lanes = new LinkedHashMap<>();
+        previous.lanes.forEach(lane -> lanes.put(lane.getIndex(), lane));
+        next.lanes.forEach(lane -> lanes.put(lane.getIndex(), lane));
+        merged.lanes.addAll(lanes.values());
+        return merged;
+    }
+
+    public long getBaseSequence() {
+        return baseSequence;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean isKeyframe() {
+        return keyframe;
     }
 
     public List<CarState> getCars() {
-        return cars;
+        return Collections.unmodifiableList(cars);
+    }
+
+    // the ids of the cars which arrived since the previous state (always empty for keyframes)
+    public List<Integer> getArrivedCars() {
+        return Collections.unmodifiableList(arrivedCars);
     }
 
     public List<LaneState> getLanes() {
-        return lanes;
+        return Collections.unmodifiableList(lanes);
     }
 
     public long getTime() {
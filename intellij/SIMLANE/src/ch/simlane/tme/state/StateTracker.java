@@ -0,0 +1,85 @@
+package ch.simlane.tme.state;
+
+import ch.simlane.tme.components.Car;
+import ch.simlane.tme.components.CarStore;
+import ch.simlane.tme.components.Lane;
+import ch.simlane.tme.components.TrafficLight;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates the states of a simulation.
+ * Remembers what has been published by the previous state, so that a delta state only contains what changed.
+ */
+public class StateTracker {
+
+    private long sequence;
+
+    // the published position and lane index of each car by id (the lane index is -1 if the car is not published)
+    private double[] pos;
+    private int[] lane;
+    // the published traffic light of each lane by index
+    private TrafficLight[] lights;
+
+    public StateTracker() {
+        pos = new double[0];
+        lane = new int[0];
+        lights = new TrafficLight[0];
+    }
+
+    /**
+     * Creates the next state. The specified cars (the ids from index 0 to numCars - 1 in ascending order) must
+     * include every active car and every car which arrived since the previous state, all other cars are skipped.
+     */
+    public SimulationState createState(long t, boolean keyframe, CarStore carStore, int[] cars, int numCars,
+                                       List<Lane> lanes) {
+        // the first state is always a keyframe
+        keyframe |= sequence == 0;
+        SimulationState state = new SimulationState(sequence++, keyframe, t);
+        updateCars(state, carStore, cars, numCars);
+        updateLanes(state, lanes);
+        return state;
+    }
+
+    private void updateCars(SimulationState state, CarStore carStore, int[] cars, int numCars) {
+        int size = carStore.size();
+        if (lane.length < size) {
+            int length = lane.length;
+            pos = Arrays.copyOf(pos, size);
+            lane = Arrays.copyOf(lane, size);
+            Arrays.fill(lane, length, size, -1);
+        }
+        for (int i = 0; i < numCars; i++) {
+            int id = cars[i];
+            Car car = carStore.getCar(id);
+            if (car.getState() == Car.CAR_STATE_ACTIVE) {
+                double carPos = carStore.getPos(id);
+                int carLane = carStore.getLaneIndex(id);
+                if (state.isKeyframe() || pos[id] != carPos || lane[id] != carLane) {
+                    state.addCar(new CarState(car));
+                    pos[id] = carPos;
+                    lane[id] = carLane;
+                }
+            } else if (lane[id] != -1) {
+                if (!state.isKeyframe()) {
+                    state.addArrivedCar(id);
+                }
+                lane[id] = -1;
+            }
+        }
+    }
+
+    private void updateLanes(SimulationState state, List<Lane> lanes) {
+        if (lights.length < lanes.size()) {
+            lights = Arrays.copyOf(lights, lanes.size());
+        }
+        for (Lane lane : lanes) {
+            TrafficLight light = lane.getState();
+            if (state.isKeyframe() || lights[lane.getIndex()] != light) {
+                state.addLane(new LaneState(lane));
+                lights[lane.getIndex()] = light;
+            }
+        }
+    }
+}
@@ -35,7 +35,7 @@ public class SimlaneTMEListener implements TMEListener {
     public void tmeEvent(TMEEvent event) {
         switch (event.getType()) {
             case Engine.SIMULATION_STATE_CHANGED_EVENT:
-                simulationStateChanged();
+                simulationStateChanged(event);
                 break;
             case Engine.MODEL_VALIDATION_SUCCESSFUL_EVENT:
                 modelValidationSuccessful();
@@ -61,13 +61,13 @@ public class SimlaneTMEListener implements TMEListener {
         }
     }
 
-    private void simulationStateChanged() {
+    private void simulationStateChanged(TMEEvent event) {
         int state = simulationControls.getState();
         if (state == SimulationControls.STATE_DISABLED) {
             return;
         }
         // synchronously parsing the simulation state
-        simulationStateParser.parse(tme.getSimulationState());
+        simulationStateParser.parse(event.getState() != null ? event.getState() : tme.getSimulationState());
     }
 
     private void modelValidationSuccessful() {
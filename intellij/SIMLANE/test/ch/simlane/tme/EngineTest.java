@@ -0,0 +1,33 @@
+package ch.simlane.tme;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class EngineTest {
+
+    // the number of registered simulation metrics of all engines
+    private static int countMetrics() throws MalformedObjectNameException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.queryNames(new ObjectName("ch.simlane.tme:type=SimulationMetrics,*"), null).size();
+    }
+
+    @Test
+    public void testShutdownUnregistersMetrics() throws MalformedObjectNameException {
+        int registered = countMetrics();
+        Engine first = new Engine();
+        Engine second = new Engine();
+        assertEquals(registered + 2, countMetrics());
+        first.shutdown();
+        second.shutdown();
+        assertEquals(registered, countMetrics());
+        // shutting down twice has no effect
+        first.shutdown();
+        assertEquals(registered, countMetrics());
+    }
+}
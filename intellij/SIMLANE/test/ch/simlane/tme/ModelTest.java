@@ -37,6 +37,7 @@ public class ModelTest {
 
     @AfterEach
     public void destroy() {
+        this.tme.shutdown();
         this.simlane = null;
         this.editor = null;
         this.tme = null;
@@ -0,0 +1,297 @@
+package ch.simlane.tme;
+
+import ch.simlane.ModelLoader;
+import ch.simlane.editor.CarType;
+import ch.simlane.editor.Editor;
+import ch.simlane.editor.Map;
+import ch.simlane.editor.Tile;
+import ch.simlane.editor.scenario.EndPoint;
+import ch.simlane.editor.scenario.Scenario;
+import ch.simlane.editor.scenario.StartPoint;
+import ch.simlane.tme.components.Car;
+import ch.simlane.tme.components.Connector;
+import ch.simlane.tme.components.Demand;
+import ch.simlane.tme.components.Lane;
+import ch.simlane.tme.components.LaneGroup;
+import ch.simlane.tme.components.TrafficLight;
+import ch.simlane.tme.state.CarState;
+import ch.simlane.tme.state.SimulationState;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SimulationTest {
+
+    private static final int NUM_LANES = 5;
+    private static final int NUM_CARS = 20;
+
+    // creates a straight corridor of lanes from a start connector to an end connector
+    private static Model createCorridor(long seed) {
+        return createCorridor(seed, NUM_CARS, 0);
+    }
+
+    // creates a corridor with the specified number of cars created up front and generated from a demand
+    private static Model createCorridor(long seed, int numCars, int numDemandCars) {
+        Model model = new Model();
+        model.setSeed(seed);
+        Connector start = new Connector("start", 0, Connector.CONNECTOR_TYPE_START);
+        Connector end = new Connector(NUM_LANES - 1, "end", Connector.CONNECTOR_TYPE_END);
+        Connector connector = start;
+        for (int i = 0; i < NUM_LANES; i++) {
+            Connector next = (i == NUM_LANES - 1) ? end : new Connector(i, i + 1);
+            model.addLane(new Lane(60, new LaneGroup(connector), next));
+            connector = next;
+        }
+        for (int i = 0; i < numCars; i++) {
+            Car car = new Car(i);
+            car.setStartConnector(start);
+            car.setEndConnector(end);
+            model.addCar(car);
+        }
+        model.addDemand(new Demand("demand", start, end, numDemandCars));
+        assertTrue(model.validate());
+        return model;
+    }
+
+    /*
+     * Creates a grid with straight lanes from left to right and from top to bottom on every tile, where four rows
+     * and four columns carry traffic (one car type each).
+     */
+    private static Model createDenseGrid(long seed, int carsPerStart) throws Exception {
+        int size = 6;
+        List<Integer> trafficLines = Arrays.asList(0, 2, 3, 5);
+        Map map = new Map(size, size);
+        Scenario scenario = new Scenario("grid", size, size);
+        CarType[] carTypes = CarType.values();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                map.getTile(i, j).setLaneState(Editor.SIDE_LEFT, Editor.SIDE_RIGHT, Tile.LANE_STATE_SELECTED);
+                map.getTile(j, i).setLaneState(Editor.SIDE_TOP, Editor.SIDE_BOTTOM, Tile.LANE_STATE_SELECTED);
+            }
+            int line = trafficLines.indexOf(i);
+            addScenarioPoints(scenario, Editor.SIDE_LEFT, Editor.SIDE_RIGHT, i,
+                    line == -1 ? null : carTypes[line], line == -1 ? 0 : carsPerStart);
+            addScenarioPoints(scenario, Editor.SIDE_TOP, Editor.SIDE_BOTTOM, i,
+                    line == -1 ? null : carTypes[trafficLines.size() + line], line == -1 ? 0 : carsPerStart);
+        }
+        ModelLoader modelLoader = new ModelLoader(map, scenario);
+        modelLoader.createModel();
+        Model model = modelLoader.getModel();
+        assertTrue(model.validate());
+        model.setSeed(seed);
+        return model;
+    }
+
+    private static void addScenarioPoints(Scenario scenario, int startSide, int endSide, int pos, CarType carType,
+                                          int cars) {
+        StartPoint startPoint = new StartPoint(startSide, pos);
+        if (cars > 0) {
+            startPoint.addInboundTraffic(carType, cars);
+        }
+        scenario.addScenarioPoint(startPoint);
+        EndPoint endPoint = new EndPoint(endSide, pos);
+        endPoint.setCarType(carType);
+        scenario.addScenarioPoint(endPoint);
+    }
+
+    private static List<Double> run(Model model) throws SimulationException {
+        return run(model, Simulation.VALIDATION_MODE_FULL);
+    }
+
+    private static List<Double> run(Model model, int validationMode) throws SimulationException {
+        List<Double> positions = new LinkedList<>();
+        Simulation simulation = new Simulation(model);
+        simulation.setValidationMode(validationMode);
+        HeadlessRunner runner = new HeadlessRunner(simulation);
+        runner.setSampler(10, state -> state.getCars().forEach(car -> positions.add(car.getPos())));
+        assertTrue(runner.run());
+        positions.add((double) runner.getSimulation().getTime());
+        return positions;
+    }
+
+    @Test
+    public void testSameSeedIsReproducible() throws SimulationException {
+        assertEquals(run(createCorridor(42)), run(createCorridor(42)));
+    }
+
+    @Test
+    public void testResetIsReproducible() throws SimulationException {
+        Model model = createCorridor(7);
+        List<Double> first = run(model);
+        model.reset();
+        assertEquals(first, run(model));
+    }
+
+    @Test
+    public void testStatesContainActiveCars() throws SimulationException {
+        Model model = createCorridor(5);
+        Simulation simulation = new Simulation(model);
+        while (simulation.hasNextStep()) {
+            simulation.nextStep(50);
+            List<Integer> activeCars = new LinkedList<>();
+            for (Car car : model.getCars()) {
+                if (car.getState() == Car.CAR_STATE_ACTIVE) {
+                    activeCars.add(car.getId());
+                }
+            }
+            List<Integer> stateCars = new LinkedList<>();
+            simulation.getState().getCars().forEach(car -> stateCars.add(car.getId()));
+            assertEquals(activeCars, stateCars);
+        }
+        for (Car car : model.getCars()) {
+            assertEquals(Car.CAR_STATE_ARRIVED, car.getState());
+        }
+    }
+
+    @Test
+    public void testCarsEnterInOrder() throws SimulationException {
+        Model model = createCorridor(9);
+        Simulation simulation = new Simulation(model);
+        int numEntered = 0;
+        while (simulation.hasNextStep()) {
+            simulation.nextStep(50);
+            int entered = 0;
+            for (Car car : model.getCars()) {
+                if (car.getState() != Car.CAR_STATE_NEW) {
+                    assertEquals(entered, car.getId());
+                    entered++;
+                }
+            }
+            // at most one car enters the lane per step
+            assertTrue(entered - numEntered <= 1);
+            numEntered = entered;
+        }
+        assertEquals(NUM_CARS, numEntered);
+    }
+
+    @Test
+    public void testDenseGridRunsToCompletion() throws Exception {
+        // with this seed, cars entering before the active cars moved without being seen by them crashed
+        assertTrue(new HeadlessRunner(new Simulation(createDenseGrid(6, 50))).run());
+    }
+
+    @Test
+    public void testDemandCarsAreReused() throws SimulationException {
+        int numTrips = 200;
+        Model model = createCorridor(11, 0, numTrips);
+        assertTrue(new HeadlessRunner(new Simulation(model)).run());
+        // the cars are only as many as were on the road at the same time
+        assertTrue(model.getCarStore().size() < numTrips / 4);
+        model.reset();
+        assertEquals(0, model.getCarStore().size());
+    }
+
+    @Test
+    public void testDemandMatchesCars() throws SimulationException {
+        List<Double> cars = run(createCorridor(13, NUM_CARS, 0));
+        List<Double> demand = run(createCorridor(13, 0, NUM_CARS));
+        // the simulations end at the same time
+        assertEquals(cars.get(cars.size() - 1), demand.get(demand.size() - 1));
+    }
+
+    @Test
+    public void testValidationModesDoNotChangeResults() throws SimulationException {
+        List<Double> full = run(createCorridor(17));
+        assertEquals(full, run(createCorridor(17), Simulation.VALIDATION_MODE_SAMPLED));
+        assertEquals(full, run(createCorridor(17), Simulation.VALIDATION_MODE_OFF));
+    }
+
+    @Test
+    public void testCrashWithStoppedCarIsDetected() throws SimulationException {
+        Model model = new Model();
+        Connector start = new Connector("start", 0, Connector.CONNECTOR_TYPE_START);
+        Connector connector = new Connector(0, 1);
+        Connector end = new Connector(1, "end", Connector.CONNECTOR_TYPE_END);
+        LaneGroup signal = new LaneGroup(connector);
+        model.addLane(new Lane(200, new LaneGroup(start), connector));
+        model.addLane(new Lane(60, signal, end));
+        for (int i = 0; i < 2; i++) {
+            Car car = new Car(i);
+            car.setStartConnector(start);
+            car.setEndConnector(end);
+            model.addCar(car);
+        }
+        assertTrue(model.validate());
+        Simulation simulation = new Simulation(model);
+        simulation.setValidationMode(Simulation.VALIDATION_MODE_OFF);
+        signal.setState(TrafficLight.RED);
+        // both cars stop in front of the red light
+        for (int i = 0; i < 2000; i++) {
+            simulation.nextStep(50);
+        }
+        Car leader = model.getCars().get(0);
+        Car follower = model.getCars().get(1);
+        assertEquals(0, leader.getV());
+        assertEquals(leader.getLane(), follower.getLane());
+        follower.setPos(leader.getPos());
+        assertThrows(SimulationException.class, () -> simulation.nextStep(50));
+    }
+
+    @Test
+    public void testDeltaStatesMatchFullStates() throws SimulationException {
+        Simulation full = new Simulation(createCorridor(3));
+        Simulation delta = new Simulation(createCorridor(3));
+        delta.setSnapshotMode(Simulation.SNAPSHOT_MODE_DELTA);
+        delta.setKeyframeInterval(50);
+        // the cars by id as reconstructed from the delta states
+        HashMap<Integer, Double> cars = new HashMap<>();
+        int deltas = 0;
+        while (full.hasNextStep()) {
+            full.nextStep(50);
+            delta.nextStep(50);
+            SimulationState state = delta.getState();
+            if (state.isKeyframe()) {
+                cars.clear();
+            } else {
+                deltas++;
+            }
+            state.getArrivedCars().forEach(cars::remove);
+            state.getCars().forEach(car -> cars.put(car.getId(), car.getPos()));
+            HashMap<Integer, Double> expected = new HashMap<>();
+            for (CarState car : full.getState().getCars()) {
+                expected.put(car.getId(), car.getPos());
+            }
+            assertEquals(expected, cars);
+        }
+        assertFalse(delta.hasNextStep());
+        assertTrue(deltas > 0);
+    }
+
+    @Test
+    public void testMergedDeltaStatesMatchFullStates() throws SimulationException {
+        Simulation full = new Simulation(createCorridor(5));
+        Simulation delta = new Simulation(createCorridor(5));
+        delta.setSnapshotMode(Simulation.SNAPSHOT_MODE_DELTA);
+        HashMap<Integer, Double> cars = new HashMap<>();
+        SimulationState merged = null;
+        int step = 0;
+        while (full.hasNextStep()) {
+            full.nextStep(50);
+            delta.nextStep(50);
+            merged = merged == null ? delta.getState() : SimulationState.merge(merged, delta.getState());
+            // apply every third (merged) state
+            if (++step % 3 != 0 && full.hasNextStep()) {
+                continue;
+            }
+            if (merged.isKeyframe()) {
+                cars.clear();
+            }
+            merged.getArrivedCars().forEach(cars::remove);
+            merged.getCars().forEach(car -> cars.put(car.getId(), car.getPos()));
+            merged = null;
+            HashMap<Integer, Double> expected = new HashMap<>();
+            for (CarState car : full.getState().getCars()) {
+                expected.put(car.getId(), car.getPos());
+            }
+            assertEquals(expected, cars);
+        }
+    }
+}
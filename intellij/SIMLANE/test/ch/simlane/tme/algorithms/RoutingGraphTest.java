@@ -0,0 +1,63 @@
+package ch.simlane.tme.algorithms;
+
+import ch.simlane.tme.components.Connector;
+import ch.simlane.tme.components.Lane;
+import ch.simlane.tme.components.LaneGroup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RoutingGraphTest {
+
+    private Connector start;
+    private Connector a;
+    private Connector b;
+    private Connector end;
+    private Connector unreachable;
+
+    private List<Lane> lanes;
+
+    // creates two routes from start to end, the one via a being shorter than the one via b
+    @BeforeEach
+    public void initialize() {
+        start = new Connector("start", "0", Connector.CONNECTOR_TYPE_START);
+        a = new Connector("0", "a");
+        b = new Connector("0", "b");
+        end = new Connector("1", "end", Connector.CONNECTOR_TYPE_END);
+        unreachable = new Connector("2", "end", Connector.CONNECTOR_TYPE_END);
+        lanes = new LinkedList<>();
+        LaneGroup fromStart = new LaneGroup(start);
+        lanes.add(new Lane(100, fromStart, b));
+        lanes.add(new Lane(20, fromStart, a));
+        lanes.add(new Lane(20, new LaneGroup(a), end));
+        lanes.add(new Lane(20, new LaneGroup(b), end));
+    }
+
+    @Test
+    public void testShortestPath() {
+        RoutingGraph graph = new RoutingGraph(lanes);
+        assertEquals(4, graph.getNumNodes());
+        assertEquals(4, graph.getNumEdges());
+        assertEquals(Arrays.asList(start, a, end), graph.shortestPath(start, end));
+        assertEquals(Arrays.asList(b, end), graph.shortestPath(b, end));
+        assertNull(graph.shortestPath(end, start));
+        assertNull(graph.shortestPath(start, unreachable));
+    }
+
+    @Test
+    public void testRoutesAreCached() {
+        RoutingGraph graph = new RoutingGraph(lanes);
+        assertSame(graph.shortestPath(start, end), graph.shortestPath(start, end));
+    }
+
+    @Test
+    public void testShortestPathFromConnector() {
+        assertEquals(Arrays.asList(start, a, end), ShortestPath.shortestPath(start, end));
+        assertNull(ShortestPath.shortestPath(a, b));
+    }
+}
@@ -0,0 +1,82 @@
+package ch.simlane.tme.components;
+
+import ch.simlane.tme.Engine;
+import ch.simlane.tme.Model;
+import ch.simlane.tme.Simulation;
+import ch.simlane.tme.SimulationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class CarTest {
+
+    private static final int NUM_CARS = 10;
+    private static final long DT = 50; // milliseconds
+    private static final int NUM_UPDATES = 10000;
+    private static final double LANE_LENGTH = 100; // m
+    // the cars do not reach the end of the route within the updates of the test
+    private static final int NUM_LANES = (int) (3 * NUM_UPDATES * (DT / 1000.0) * Engine.SPEED_LIMIT / LANE_LENGTH);
+
+    private Car[] cars;
+
+    // enters the cars on a route of short lanes, so the cars change lanes during the test
+    @BeforeEach
+    public void initialize() throws SimulationException {
+        Model model = new Model();
+        model.setSeed(1);
+        Connector start = new Connector("start", 0, Connector.CONNECTOR_TYPE_START);
+        Connector end = new Connector(NUM_LANES - 1, "end", Connector.CONNECTOR_TYPE_END);
+        Connector connector = start;
+        for (int i = 0; i < NUM_LANES; i++) {
+            Connector next = (i == NUM_LANES - 1) ? end : new Connector(i, i + 1);
+            model.addLane(new Lane(LANE_LENGTH, new LaneGroup(connector), next));
+            connector = next;
+        }
+        for (int i = 0; i < NUM_CARS; i++) {
+            Car car = new Car(i);
+            car.setStartConnector(start);
+            car.setEndConnector(end);
+            model.addCar(car);
+        }
+        assertTrue(model.validate());
+        Simulation simulation = new Simulation(model);
+        simulation.setParallel(false);
+        cars = model.getCars().toArray(new Car[0]);
+        while (cars[NUM_CARS - 1].getState() == Car.CAR_STATE_NEW) {
+            simulation.nextStep(DT);
+        }
+    }
+
+    private void update(int updates) throws SimulationException {
+        for (int i = 0; i < updates; i++) {
+            for (Car car : cars) {
+                car.update(DT);
+            }
+        }
+    }
+
+    // the steady state updates of the cars do not allocate any memory, not even when changing lanes
+    @Test
+    public void testUpdateDoesNotAllocate() throws SimulationException {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        // warm up
+        update(NUM_UPDATES);
+        Lane lane = cars[0].getLane();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        update(NUM_UPDATES);
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        for (Car car : cars) {
+            assertEquals(Car.CAR_STATE_ACTIVE, car.getState());
+        }
+        assertNotSame(lane, cars[0].getLane());
+        assertEquals(0, allocated);
+    }
+}
@@ -0,0 +1,76 @@
+package ch.simlane.tme.components;
+
+import ch.simlane.tme.SimulationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LaneTest {
+
+    private static final int NUM_CARS = 20;
+
+    private Lane lane;
+    private Car[] cars;
+
+    @BeforeEach
+    public void initialize() throws SimulationException {
+        Connector start = new Connector("start", "lane");
+        Connector end = new Connector("lane", "end");
+        lane = new Lane(1000, new LaneGroup(start), end);
+        // enter more cars than the initial capacity of the lane, moving each car ahead by 10 m
+        cars = new Car[NUM_CARS];
+        for (int i = 0; i < NUM_CARS; i++) {
+            cars[i] = new Car(i);
+            lane.add(cars[i]);
+            for (int j = 0; j <= i; j++) {
+                lane.move(cars[j], 10);
+            }
+        }
+    }
+
+    @Test
+    public void testOrder() throws SimulationException {
+        assertEquals(NUM_CARS, lane.size());
+        assertTrue(lane.isLastCar(cars[0]));
+        assertSame(cars[NUM_CARS - 1], lane.getFirstCar());
+        for (int i = 1; i < NUM_CARS; i++) {
+            assertFalse(lane.isLastCar(cars[i]));
+            assertSame(cars[i - 1], lane.getCarAhead(cars[i]));
+            assertSame(cars[i], lane.getCarBehind(cars[i - 1]));
+            assertEquals(10, lane.availableDistanceFromCar(cars[i]), 1e-9);
+        }
+        assertNull(lane.getCarBehind(cars[NUM_CARS - 1]));
+        lane.validate();
+    }
+
+    @Test
+    public void testLeaveAndEnter() throws SimulationException {
+        lane.move(cars[0], 1000);
+        lane.remove(cars[0]);
+        assertTrue(lane.isLastCar(cars[1]));
+        assertEquals(1000, lane.distanceFromCarToEnd(cars[0]), 1e-9);
+        assertThrows(IllegalStateException.class, () -> lane.isLastCar(cars[0]));
+        // the removed car enters the lane again behind all other cars
+        lane.add(cars[0]);
+        assertSame(cars[0], lane.getFirstCar());
+        assertSame(cars[NUM_CARS - 1], lane.getCarAhead(cars[0]));
+        lane.validate();
+    }
+
+    @Test
+    public void testRemoveBehindCarAhead() throws SimulationException {
+        lane.move(cars[5], 1000);
+        lane.remove(cars[5]);
+        assertEquals(NUM_CARS - 1, lane.size());
+        assertSame(cars[4], lane.getCarAhead(cars[6]));
+        assertTrue(lane.isLastCar(cars[0]));
+    }
+
+    @Test
+    public void testReset() {
+        lane.reset();
+        assertTrue(lane.isEmpty());
+        assertEquals(1000, lane.availableDistanceFromStart(), 1e-9);
+    }
+}